@@ -0,0 +1,53 @@
+package nl.topicus.spanner.converter.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+
+/**
+ * Creates converter configurations for the benchmarks. No connections are
+ * opened with the URLs of these configurations.
+ */
+public final class BenchmarkConfigurations
+{
+	private static final String SOURCE_URL = "jdbc:postgresql://localhost/source";
+
+	private static final String POSTGRESQL_URL = "jdbc:postgresql://localhost/destination";
+
+	private static final String CLOUD_SPANNER_URL = "jdbc:cloudspanner://localhost;Project=benchmark;Instance=benchmark;Database=destination";
+
+	private BenchmarkConfigurations()
+	{
+	}
+
+	/**
+	 * @param destination
+	 *            The type of the destination database
+	 * @param properties
+	 *            The converter properties, as they would be given in a
+	 *            properties file
+	 */
+	public static ConverterConfiguration create(DatabaseType destination, Properties properties) throws IOException
+	{
+		Path file = Files.createTempFile("benchmark", ".properties");
+		try
+		{
+			try (Writer writer = Files.newBufferedWriter(file))
+			{
+				properties.store(writer, null);
+			}
+			return new ConverterConfiguration(SOURCE_URL,
+					destination == DatabaseType.CloudSpanner ? CLOUD_SPANNER_URL : POSTGRESQL_URL, file.toUri());
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package nl.topicus.spanner.converter.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.topicus.spanner.converter.data.Columns;
+
+/**
+ * Measures building the SQL fragments that {@link Columns} generates for the
+ * statements of the upload workers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnsBenchmark
+{
+	@Param({ "NARROW", "WIDE", "LOB" })
+	private RowShape shape;
+
+	private Columns columns;
+
+	@Setup
+	public void setup()
+	{
+		columns = shape.createColumns();
+	}
+
+	@Benchmark
+	public String insertStatement()
+	{
+		return "INSERT INTO BENCHMARK (" + columns.getColumnNames() + ") VALUES \n(" + columns.getColumnParameters()
+				+ ")";
+	}
+
+	@Benchmark
+	public String keyRangeWhereClause()
+	{
+		return columns.getPrimaryKeyColumnsWhereClause("");
+	}
+
+	@Benchmark
+	public String keysetComparisonRowValue()
+	{
+		return columns.getPrimaryKeyComparison("", ">", true);
+	}
+
+	@Benchmark
+	public String keysetComparisonExpanded()
+	{
+		return columns.getPrimaryKeyComparison("", ">", false);
+	}
+
+}
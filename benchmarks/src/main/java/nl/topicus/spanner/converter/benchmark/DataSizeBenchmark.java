@@ -0,0 +1,72 @@
+package nl.topicus.spanner.converter.benchmark;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+
+/**
+ * Measures {@link ConverterUtils#getActualDataSize(int, Object)} for all
+ * values of a record. One operation is one record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataSizeBenchmark
+{
+	private static final int ROWS = 1000;
+
+	@Param({ "NARROW", "WIDE", "LOB" })
+	private RowShape shape;
+
+	@Param({ "PostgreSQL", "CloudSpanner" })
+	private DatabaseType destination;
+
+	private ConverterUtils converterUtils;
+
+	private int[] columnTypes;
+
+	private Object[][] rows;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		converterUtils = new ConverterUtils(BenchmarkConfigurations.create(destination, new Properties()));
+		columnTypes = shape.getColumnTypes();
+		rows = shape.createRows(ROWS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long actualDataSize()
+	{
+		long size = 0L;
+		for (Object[] row : rows)
+		{
+			for (int index = 0; index < columnTypes.length; index++)
+			{
+				size += converterUtils.getActualDataSize(columnTypes[index], row[index]);
+			}
+		}
+		return size;
+	}
+
+}
@@ -0,0 +1,156 @@
+package nl.topicus.spanner.converter.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+/**
+ * Forward-only result set over records that are held in memory. The getters
+ * return the values as they were given, so the benchmarks measure the cost of
+ * the converter and not the cost of decoding the values of a real driver.
+ */
+public class InMemoryResultSet extends AbstractResultSet
+{
+	private final Object[][] rows;
+
+	private int current = -1;
+
+	private boolean wasNull;
+
+	private boolean closed;
+
+	public InMemoryResultSet(Object[][] rows)
+	{
+		this.rows = rows;
+	}
+
+	/**
+	 * Positions the result set before the first record again
+	 */
+	public void reset()
+	{
+		current = -1;
+		closed = false;
+	}
+
+	private Object value(int columnIndex)
+	{
+		Object value = rows[current][columnIndex - 1];
+		wasNull = value == null;
+		return value;
+	}
+
+	@Override
+	public boolean next() throws SQLException
+	{
+		if (current < rows.length)
+			current++;
+		return current < rows.length;
+	}
+
+	@Override
+	public boolean wasNull() throws SQLException
+	{
+		return wasNull;
+	}
+
+	@Override
+	public Object getObject(int columnIndex) throws SQLException
+	{
+		return value(columnIndex);
+	}
+
+	@Override
+	public String getString(int columnIndex) throws SQLException
+	{
+		Object value = value(columnIndex);
+		return value == null ? null : value.toString();
+	}
+
+	@Override
+	public long getLong(int columnIndex) throws SQLException
+	{
+		Object value = value(columnIndex);
+		return value == null ? 0L : ((Number) value).longValue();
+	}
+
+	@Override
+	public int getInt(int columnIndex) throws SQLException
+	{
+		Object value = value(columnIndex);
+		return value == null ? 0 : ((Number) value).intValue();
+	}
+
+	@Override
+	public short getShort(int columnIndex) throws SQLException
+	{
+		Object value = value(columnIndex);
+		return value == null ? 0 : ((Number) value).shortValue();
+	}
+
+	@Override
+	public double getDouble(int columnIndex) throws SQLException
+	{
+		Object value = value(columnIndex);
+		return value == null ? 0d : ((Number) value).doubleValue();
+	}
+
+	@Override
+	public float getFloat(int columnIndex) throws SQLException
+	{
+		Object value = value(columnIndex);
+		return value == null ? 0f : ((Number) value).floatValue();
+	}
+
+	@Override
+	public boolean getBoolean(int columnIndex) throws SQLException
+	{
+		Object value = value(columnIndex);
+		return value != null && ((Boolean) value).booleanValue();
+	}
+
+	@Override
+	public BigDecimal getBigDecimal(int columnIndex) throws SQLException
+	{
+		return (BigDecimal) value(columnIndex);
+	}
+
+	@Override
+	public byte[] getBytes(int columnIndex) throws SQLException
+	{
+		return (byte[]) value(columnIndex);
+	}
+
+	@Override
+	public Date getDate(int columnIndex) throws SQLException
+	{
+		return (Date) value(columnIndex);
+	}
+
+	@Override
+	public Time getTime(int columnIndex) throws SQLException
+	{
+		return (Time) value(columnIndex);
+	}
+
+	@Override
+	public Timestamp getTimestamp(int columnIndex) throws SQLException
+	{
+		return (Timestamp) value(columnIndex);
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		closed = true;
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException
+	{
+		return closed;
+	}
+
+}
@@ -0,0 +1,67 @@
+package nl.topicus.spanner.converter.benchmark;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Connection that creates {@link NoOpPreparedStatement}s and ignores commits
+ * and rollbacks
+ */
+public class NoOpConnection extends AbstractConnection
+{
+	private boolean autoCommit = true;
+
+	private boolean closed;
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException
+	{
+		return new NoOpPreparedStatement(sql);
+	}
+
+	@Override
+	public void commit() throws SQLException
+	{
+	}
+
+	@Override
+	public void rollback() throws SQLException
+	{
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException
+	{
+		return autoCommit;
+	}
+
+	@Override
+	public void setAutoCommit(boolean autoCommit) throws SQLException
+	{
+		this.autoCommit = autoCommit;
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException
+	{
+		return false;
+	}
+
+	@Override
+	public void setReadOnly(boolean readOnly) throws SQLException
+	{
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		closed = true;
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException
+	{
+		return closed;
+	}
+
+}
@@ -0,0 +1,189 @@
+package nl.topicus.spanner.converter.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+/**
+ * Prepared statement that keeps the parameter values of the current record
+ * and counts the executed statements, but does not send anything anywhere
+ */
+public class NoOpPreparedStatement extends AbstractPreparedStatement
+{
+	private final Object[] objects;
+
+	private final long[] longs;
+
+	private final double[] doubles;
+
+	private int batchedStatements;
+
+	private long executedStatements;
+
+	private boolean closed;
+
+	public NoOpPreparedStatement(String sql)
+	{
+		int parameters = 0;
+		for (int index = 0; index < sql.length(); index++)
+		{
+			if (sql.charAt(index) == '?')
+				parameters++;
+		}
+		this.objects = new Object[parameters + 1];
+		this.longs = new long[parameters + 1];
+		this.doubles = new double[parameters + 1];
+	}
+
+	/**
+	 * @return The number of statements that have been executed, including
+	 *         statements executed in a batch
+	 */
+	public long getExecutedStatements()
+	{
+		return executedStatements;
+	}
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType) throws SQLException
+	{
+		objects[parameterIndex] = null;
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException
+	{
+		objects[parameterIndex] = x;
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x) throws SQLException
+	{
+		objects[parameterIndex] = x;
+	}
+
+	@Override
+	public void setLong(int parameterIndex, long x) throws SQLException
+	{
+		longs[parameterIndex] = x;
+	}
+
+	@Override
+	public void setInt(int parameterIndex, int x) throws SQLException
+	{
+		longs[parameterIndex] = x;
+	}
+
+	@Override
+	public void setShort(int parameterIndex, short x) throws SQLException
+	{
+		longs[parameterIndex] = x;
+	}
+
+	@Override
+	public void setBoolean(int parameterIndex, boolean x) throws SQLException
+	{
+		longs[parameterIndex] = x ? 1L : 0L;
+	}
+
+	@Override
+	public void setDouble(int parameterIndex, double x) throws SQLException
+	{
+		doubles[parameterIndex] = x;
+	}
+
+	@Override
+	public void setFloat(int parameterIndex, float x) throws SQLException
+	{
+		doubles[parameterIndex] = x;
+	}
+
+	@Override
+	public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException
+	{
+		objects[parameterIndex] = x;
+	}
+
+	@Override
+	public void setString(int parameterIndex, String x) throws SQLException
+	{
+		objects[parameterIndex] = x;
+	}
+
+	@Override
+	public void setBytes(int parameterIndex, byte[] x) throws SQLException
+	{
+		objects[parameterIndex] = x;
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x) throws SQLException
+	{
+		objects[parameterIndex] = x;
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x) throws SQLException
+	{
+		objects[parameterIndex] = x;
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException
+	{
+		objects[parameterIndex] = x;
+	}
+
+	@Override
+	public void clearParameters() throws SQLException
+	{
+	}
+
+	@Override
+	public int executeUpdate() throws SQLException
+	{
+		executedStatements++;
+		return 1;
+	}
+
+	@Override
+	public void addBatch() throws SQLException
+	{
+		batchedStatements++;
+	}
+
+	@Override
+	public int[] executeBatch() throws SQLException
+	{
+		int[] res = new int[batchedStatements];
+		for (int index = 0; index < res.length; index++)
+		{
+			res[index] = Statement.SUCCESS_NO_INFO;
+		}
+		executedStatements += batchedStatements;
+		batchedStatements = 0;
+		return res;
+	}
+
+	@Override
+	public void clearBatch() throws SQLException
+	{
+		batchedStatements = 0;
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		closed = true;
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException
+	{
+		return closed;
+	}
+
+}
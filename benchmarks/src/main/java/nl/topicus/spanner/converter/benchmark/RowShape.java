@@ -0,0 +1,199 @@
+package nl.topicus.spanner.converter.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Random;
+
+import nl.topicus.spanner.converter.data.Columns;
+
+/**
+ * The shapes of the synthetic tables that are used by the benchmarks. The
+ * records of each shape are generated from a fixed seed, so all runs use the
+ * same data.
+ */
+public enum RowShape
+{
+	/**
+	 * A few small columns with a single column primary key
+	 */
+	NARROW
+	{
+		@Override
+		public Columns createColumns()
+		{
+			Columns res = new Columns();
+			addColumn(res, "ID", Types.BIGINT);
+			addColumn(res, "NAME", Types.VARCHAR);
+			addColumn(res, "AMOUNT", Types.DOUBLE);
+			addColumn(res, "ACTIVE", Types.BOOLEAN);
+			addColumn(res, "CREATED", Types.TIMESTAMP);
+			res.addPrimaryKeyColumn("ID");
+			return res;
+		}
+
+		@Override
+		Object[] createRow(long id, Random random)
+		{
+			return new Object[] { id, randomString(random, 10, 30), random.nextDouble() * 1000d,
+					random.nextBoolean(), new Timestamp(START + random.nextInt(Integer.MAX_VALUE)) };
+		}
+	},
+	/**
+	 * 50 columns of all common types, of which some are null, with a two
+	 * column primary key
+	 */
+	WIDE
+	{
+		private final int[] types = { Types.BIGINT, Types.INTEGER, Types.DOUBLE, Types.DECIMAL, Types.VARCHAR,
+				Types.BOOLEAN, Types.DATE, Types.TIMESTAMP };
+
+		@Override
+		public Columns createColumns()
+		{
+			Columns res = new Columns();
+			addColumn(res, "TENANT", Types.BIGINT);
+			addColumn(res, "ID", Types.BIGINT);
+			for (int index = 0; index < WIDE_COLUMNS - 2; index++)
+			{
+				addColumn(res, "COL" + index, types[index % types.length]);
+			}
+			res.addPrimaryKeyColumn("TENANT");
+			res.addPrimaryKeyColumn("ID");
+			return res;
+		}
+
+		@Override
+		Object[] createRow(long id, Random random)
+		{
+			Object[] res = new Object[WIDE_COLUMNS];
+			res[0] = id % 10L;
+			res[1] = id;
+			for (int index = 0; index < WIDE_COLUMNS - 2; index++)
+			{
+				if (random.nextInt(10) == 0)
+					continue;
+				res[index + 2] = createValue(types[index % types.length], random);
+			}
+			return res;
+		}
+
+		private Object createValue(int type, Random random)
+		{
+			switch (type)
+			{
+			case Types.BIGINT:
+				return random.nextLong();
+			case Types.INTEGER:
+				return random.nextInt();
+			case Types.DOUBLE:
+				return random.nextDouble();
+			case Types.DECIMAL:
+				return BigDecimal.valueOf(random.nextInt(), 4);
+			case Types.VARCHAR:
+				return randomString(random, 5, 50);
+			case Types.BOOLEAN:
+				return random.nextBoolean();
+			case Types.DATE:
+				return new Date(START + random.nextInt(Integer.MAX_VALUE));
+			default:
+				return new Timestamp(START + random.nextInt(Integer.MAX_VALUE));
+			}
+		}
+	},
+	/**
+	 * Large text and binary columns
+	 */
+	LOB
+	{
+		@Override
+		public Columns createColumns()
+		{
+			Columns res = new Columns();
+			addColumn(res, "ID", Types.BIGINT);
+			addColumn(res, "TITLE", Types.VARCHAR);
+			addColumn(res, "BODY", Types.LONGVARCHAR);
+			addColumn(res, "DATA", Types.LONGVARBINARY);
+			res.addPrimaryKeyColumn("ID");
+			return res;
+		}
+
+		@Override
+		Object[] createRow(long id, Random random)
+		{
+			byte[] data = new byte[16 * 1024];
+			random.nextBytes(data);
+			return new Object[] { id, randomString(random, 10, 100), randomText(random, 8 * 1024), data };
+		}
+	};
+
+	private static final int WIDE_COLUMNS = 50;
+
+	private static final long START = 1500000000000L;
+
+	private static final long SEED = 42L;
+
+	/**
+	 * @return The columns of the table, with the column types of the
+	 *         destination
+	 */
+	public abstract Columns createColumns();
+
+	abstract Object[] createRow(long id, Random random);
+
+	/**
+	 * @return The given number of records, with increasing primary key values
+	 */
+	public Object[][] createRows(int count)
+	{
+		Random random = new Random(SEED);
+		Object[][] res = new Object[count][];
+		for (int index = 0; index < count; index++)
+		{
+			res[index] = createRow(index + 1L, random);
+		}
+		return res;
+	}
+
+	/**
+	 * @return The types of the columns in the destination
+	 */
+	public int[] getColumnTypes()
+	{
+		return createColumns().getColumnTypes().stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static void addColumn(Columns columns, String name, int type)
+	{
+		columns.addColumn(name);
+		columns.addColumnType(type);
+	}
+
+	private static String randomString(Random random, int minLength, int maxLength)
+	{
+		char[] res = new char[minLength + random.nextInt(maxLength - minLength + 1)];
+		for (int index = 0; index < res.length; index++)
+		{
+			res[index] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(res);
+	}
+
+	/**
+	 * @return Text of the given length of which one in ten characters is not
+	 *         ASCII
+	 */
+	private static String randomText(Random random, int length)
+	{
+		char[] res = new char[length];
+		for (int index = 0; index < res.length; index++)
+		{
+			if (random.nextInt(10) == 0)
+				res[index] = (char) (0xC0 + random.nextInt(0x100));
+			else
+				res[index] = (char) (' ' + random.nextInt(95));
+		}
+		return new String(res);
+	}
+}
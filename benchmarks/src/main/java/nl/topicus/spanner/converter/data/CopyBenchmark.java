@@ -0,0 +1,96 @@
+package nl.topicus.spanner.converter.data;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.topicus.spanner.converter.benchmark.BenchmarkConfigurations;
+import nl.topicus.spanner.converter.benchmark.InMemoryResultSet;
+import nl.topicus.spanner.converter.benchmark.NoOpConnection;
+import nl.topicus.spanner.converter.benchmark.RowShape;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+
+/**
+ * Measures copying records from a source result set to a JDBC insert
+ * statement with {@link AbstractTablePartWorker#copyRecords(java.sql.ResultSet, long)},
+ * including keeping track of the last key and committing, as an upload worker
+ * does for each page. One operation is one record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark
+{
+	private static final int ROWS = 1000;
+
+	@Param({ "NARROW", "WIDE", "LOB" })
+	private RowShape shape;
+
+	@Param({ "PostgreSQL", "CloudSpanner" })
+	private DatabaseType destination;
+
+	@Param({ "true", "false" })
+	private boolean useColumnBinders;
+
+	private BenchmarkWorker worker;
+
+	private InMemoryResultSet resultSet;
+
+	/**
+	 * Part worker that copies the records it is given instead of reading them
+	 * itself
+	 */
+	private static final class BenchmarkWorker extends AbstractTablePartWorker
+	{
+		private BenchmarkWorker(ConverterConfiguration config, Columns insertCols)
+		{
+			super(config, "BENCHMARK", "BENCHMARK", insertCols);
+		}
+
+		@Override
+		protected void run()
+		{
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException, SQLException
+	{
+		Properties properties = new Properties();
+		properties.setProperty("DataConverter.useColumnBinders", String.valueOf(useColumnBinders));
+		ConverterConfiguration config = BenchmarkConfigurations.create(destination, properties);
+		worker = new BenchmarkWorker(config, shape.createColumns());
+		worker.trackLastKey();
+		worker.startCopy(new NoOpConnection(), ROWS);
+		resultSet = new InMemoryResultSet(shape.createRows(ROWS));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long copyRecords() throws SQLException
+	{
+		resultSet.reset();
+		long count = worker.copyRecords(resultSet, ROWS);
+		worker.commitCopy();
+		return count;
+	}
+
+}
@@ -1,6 +1,6 @@
-package nl.topicus.spanner.converter;
-
-public enum ConvertMode
-{
-	SkipAll, SkipExisting, DropAndRecreate, ThrowExceptionIfExists;
+package nl.topicus.spanner.converter;
+
+public enum ConvertMode
+{
+	SkipAll, SkipExisting, DropAndRecreate, ThrowExceptionIfExists, Incremental, Merge;
 }
\ No newline at end of file
@@ -0,0 +1,6 @@
+package nl.topicus.spanner.converter;
+
+public enum ReadMode
+{
+	OffsetPaging, KeysetPaging, Streaming, PostgreSQLCopy;
+}
\ No newline at end of file
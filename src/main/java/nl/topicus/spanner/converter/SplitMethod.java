@@ -0,0 +1,6 @@
+package nl.topicus.spanner.converter;
+
+public enum SplitMethod
+{
+	Auto, Histogram, Sample, MinMax, Offset;
+}
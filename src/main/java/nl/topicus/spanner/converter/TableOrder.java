@@ -0,0 +1,6 @@
+package nl.topicus.spanner.converter;
+
+public enum TableOrder
+{
+	Size, Priority, RoundRobin, Catalog;
+}
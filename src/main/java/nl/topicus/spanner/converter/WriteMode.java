@@ -0,0 +1,6 @@
+package nl.topicus.spanner.converter;
+
+public enum WriteMode
+{
+	JdbcInsert, CloudSpannerMutations, PostgreSQLCopy;
+}
\ No newline at end of file
@@ -1,310 +1,951 @@
-package nl.topicus.spanner.converter.cfg;
-
-import java.io.IOException;
-import java.net.URI;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Properties;
-
-import nl.topicus.spanner.converter.ConvertMode;
-
-public class ConverterConfiguration
-{
-	public static enum DatabaseType
-	{
-		CloudSpanner
-		{
-			@Override
-			public boolean isType(String url)
-			{
-				return url.toLowerCase().startsWith("jdbc:cloudspanner");
-			}
-
-			@Override
-			public boolean isPrimaryKeyDefinitionInsideColumnList()
-			{
-				return false;
-			}
-
-			@Override
-			public String getDefaultSchemaName()
-			{
-				return "";
-			}
-
-			@Override
-			public boolean isSystemSchema(String schema)
-			{
-				return schema != null && schema.equalsIgnoreCase("INFORMATION_SCHEMA");
-			}
-		},
-		PostgreSQL
-		{
-			@Override
-			public boolean isType(String url)
-			{
-				return url.toLowerCase().startsWith("jdbc:postgresql");
-			}
-
-			@Override
-			public boolean isPrimaryKeyDefinitionInsideColumnList()
-			{
-				return true;
-			}
-
-			@Override
-			public String getDefaultSchemaName()
-			{
-				return "public";
-			}
-
-			@Override
-			public boolean isSystemSchema(String schema)
-			{
-				return schema != null
-						&& (schema.equalsIgnoreCase("INFORMATION_SCHEMA") || schema.toUpperCase().startsWith("PG_"));
-			}
-		};
-
-		public abstract boolean isType(String url);
-
-		public abstract boolean isPrimaryKeyDefinitionInsideColumnList();
-
-		public abstract String getDefaultSchemaName();
-
-		public abstract boolean isSystemSchema(String schema);
-
-		public static DatabaseType getType(String url)
-		{
-			for (DatabaseType type : DatabaseType.values())
-				if (type.isType(url))
-					return type;
-			return null;
-		}
-	}
-
-	private final Properties properties = new Properties();
-
-	private ConvertMode tableConvertMode;
-
-	private ConvertMode dataConvertMode;
-
-	private Integer numberOfTableWorkers;
-
-	private Integer batchSize;
-
-	private Integer maxNumberOfWorkers;
-
-	/**
-	 * Maximum time to wait for a table worker to finish in minutes
-	 */
-	private Integer tableWorkerMaxWaitInMinutes;
-
-	/**
-	 * Maximum time to wait for an upload worker to finish in minutes
-	 */
-	private Integer uploadWorkerMaxWaitInMinutes;
-
-	private Boolean useJdbcBatching;
-
-	private Integer maxStatementsInOneJdbcBatch;
-
-	private final String urlSource;
-
-	private final String urlDestination;
-
-	private String catalog;
-
-	private String schema;
-
-	/**
-	 * Cloud Spanner has a strict limit on the size of one transaction. When
-	 * deleting large tables, the delete needs to be chopped into several delete
-	 * statements to avoid exceeding the transaction limit
-	 */
-	private Long maxRecordsInSingleDeleteStatement;
-
-	/**
-	 * Create a default converter configuration
-	 */
-	public ConverterConfiguration(String urlSource, String urlDestination)
-	{
-		this.urlSource = urlSource;
-		this.urlDestination = urlDestination;
-		tableConvertMode = ConvertMode.SkipExisting;
-		dataConvertMode = ConvertMode.SkipExisting;
-		setDefaults();
-	}
-
-	/**
-	 * Create a converter configuration from a properties file
-	 */
-	public ConverterConfiguration(String urlSource, String urlDestination, URI file) throws IOException
-	{
-		this.urlSource = urlSource;
-		this.urlDestination = urlDestination;
-		properties.load(Files.newBufferedReader(Paths.get(file)));
-		setDefaults();
-	}
-
-	private void setDefaults()
-	{
-		if (getDestinationDatabaseType() == DatabaseType.CloudSpanner && maxRecordsInSingleDeleteStatement == null)
-		{
-			maxRecordsInSingleDeleteStatement = getBatchSize().longValue();
-		}
-	}
-
-	public ConvertMode getTableConvertMode()
-	{
-		if (tableConvertMode == null)
-		{
-			tableConvertMode = ConvertMode.valueOf(ConvertMode.class,
-					properties.getProperty("TableConverter.convertMode", ConvertMode.SkipExisting.name()));
-		}
-		return tableConvertMode;
-	}
-
-	public ConvertMode getDataConvertMode()
-	{
-		if (dataConvertMode == null)
-		{
-			dataConvertMode = ConvertMode.valueOf(ConvertMode.class,
-					properties.getProperty("DataConverter.convertMode", ConvertMode.SkipExisting.name()));
-		}
-		return dataConvertMode;
-	}
-
-	public Integer getBatchSize()
-	{
-		if (batchSize == null)
-		{
-			batchSize = Integer.valueOf(properties.getProperty("DataConverter.batchSize", "1500000"));
-		}
-		return batchSize;
-	}
-
-	public Integer getNumberOfTableWorkers()
-	{
-		if (numberOfTableWorkers == null)
-		{
-			numberOfTableWorkers = Integer.valueOf(properties.getProperty("DataConverter.numberOfTableWorkers", "10"));
-		}
-		return numberOfTableWorkers;
-	}
-
-	public Integer getMaxNumberOfWorkers()
-	{
-		if (maxNumberOfWorkers == null)
-		{
-			maxNumberOfWorkers = Integer.valueOf(properties.getProperty("DataConverter.maxNumberOfWorkers", "10"));
-		}
-		return maxNumberOfWorkers;
-	}
-
-	public Integer getTableWorkerMaxWaitInMinutes()
-	{
-		if (tableWorkerMaxWaitInMinutes == null)
-		{
-			tableWorkerMaxWaitInMinutes = Integer
-					.valueOf(properties.getProperty("DataConverter.tableWorkerMaxWaitInMinutes", "60"));
-		}
-		return tableWorkerMaxWaitInMinutes;
-	}
-
-	public Integer getUploadWorkerMaxWaitInMinutes()
-	{
-		if (uploadWorkerMaxWaitInMinutes == null)
-		{
-			uploadWorkerMaxWaitInMinutes = Integer
-					.valueOf(properties.getProperty("DataConverter.uploadWorkerMaxWaitInMinutes", "60"));
-		}
-		return uploadWorkerMaxWaitInMinutes;
-	}
-
-	public boolean isUseJdbcBatching()
-	{
-		if (useJdbcBatching == null)
-		{
-			useJdbcBatching = Boolean.valueOf(properties.getProperty("DataConverter.useJdbcBatching", "true"));
-		}
-		return useJdbcBatching.booleanValue();
-	}
-
-	public Integer getMaxStatementsInOneJdbcBatch()
-	{
-		if (maxStatementsInOneJdbcBatch == null)
-		{
-			maxStatementsInOneJdbcBatch = Integer
-					.valueOf(properties.getProperty("DataConverter.maxStatementsInOneJdbcBatch", "10000"));
-		}
-		return maxStatementsInOneJdbcBatch;
-	}
-
-	public String getCatalog()
-	{
-		if (catalog == null)
-		{
-			catalog = properties.getProperty("catalog", null);
-		}
-		return catalog;
-	}
-
-	public String getSchema()
-	{
-		if (schema == null)
-		{
-			schema = properties.getProperty("schema", null);
-		}
-		return schema;
-	}
-
-	public Map<String, String> getSpecificColumnMappings()
-	{
-		Map<String, String> res = new HashMap<>();
-		for (String key : properties.stringPropertyNames())
-		{
-			if (key.startsWith("TableConverter.specificColumnMapping."))
-			{
-				String column = key.substring("TableConverter.specificColumnMapping.".length());
-				String value = properties.getProperty(key);
-				res.put(column, value);
-			}
-		}
-
-		return res;
-	}
-
-	public String getUrlSource()
-	{
-		return urlSource;
-	}
-
-	public String getUrlDestination()
-	{
-		return urlDestination;
-	}
-
-	public DatabaseType getSourceDatabaseType()
-	{
-		return DatabaseType.getType(urlSource);
-	}
-
-	public DatabaseType getDestinationDatabaseType()
-	{
-		return DatabaseType.getType(urlDestination);
-	}
-
-	public boolean isPrimaryKeyDefinitionInsideColumnList()
-	{
-		return getDestinationDatabaseType().isPrimaryKeyDefinitionInsideColumnList();
-	}
-
-	protected Long getMaxRecordsInSingleDeleteStatement()
-	{
-		return maxRecordsInSingleDeleteStatement;
-	}
-
-}
+package nl.topicus.spanner.converter.cfg;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import nl.topicus.spanner.converter.ConvertMode;
+import nl.topicus.spanner.converter.DeleteMode;
+import nl.topicus.spanner.converter.ProgressFormat;
+import nl.topicus.spanner.converter.ReadMode;
+import nl.topicus.spanner.converter.SplitMethod;
+import nl.topicus.spanner.converter.TableOrder;
+import nl.topicus.spanner.converter.WriteMode;
+
+public class ConverterConfiguration
+{
+	public static enum DatabaseType
+	{
+		CloudSpanner
+		{
+			@Override
+			public boolean isType(String url)
+			{
+				return url.toLowerCase().startsWith("jdbc:cloudspanner");
+			}
+
+			@Override
+			public boolean isPrimaryKeyDefinitionInsideColumnList()
+			{
+				return false;
+			}
+
+			@Override
+			public String getDefaultSchemaName()
+			{
+				return "";
+			}
+
+			@Override
+			public boolean isSystemSchema(String schema)
+			{
+				return schema != null && schema.equalsIgnoreCase("INFORMATION_SCHEMA");
+			}
+
+			@Override
+			public boolean supportsRowValueComparison()
+			{
+				return false;
+			}
+
+			@Override
+			public boolean supportsIndexInfoOfAllTables()
+			{
+				return true;
+			}
+
+			@Override
+			public String getTableSampleClause(double percent)
+			{
+				return "TABLESAMPLE BERNOULLI (" + BigDecimal.valueOf(percent).toPlainString() + " PERCENT)";
+			}
+
+			@Override
+			public String getUpsertClause(List<String> keyColumns, List<String> columns)
+			{
+				// The JDBC driver writes these statements as insert-or-update
+				// mutations
+				return " ON DUPLICATE KEY UPDATE";
+			}
+		},
+		PostgreSQL
+		{
+			@Override
+			public boolean isType(String url)
+			{
+				return url.toLowerCase().startsWith("jdbc:postgresql");
+			}
+
+			@Override
+			public boolean isPrimaryKeyDefinitionInsideColumnList()
+			{
+				return true;
+			}
+
+			@Override
+			public String getDefaultSchemaName()
+			{
+				return "public";
+			}
+
+			@Override
+			public boolean isSystemSchema(String schema)
+			{
+				return schema != null
+						&& (schema.equalsIgnoreCase("INFORMATION_SCHEMA") || schema.toUpperCase().startsWith("PG_"));
+			}
+
+			@Override
+			public boolean supportsRowValueComparison()
+			{
+				return true;
+			}
+
+			@Override
+			public boolean supportsIndexInfoOfAllTables()
+			{
+				// The PostgreSQL JDBC driver requires a table name
+				return false;
+			}
+
+			@Override
+			public String getTableSampleClause(double percent)
+			{
+				// SYSTEM sampling only reads the sampled pages of the table
+				return "TABLESAMPLE SYSTEM (" + BigDecimal.valueOf(percent).toPlainString() + ")";
+			}
+
+			@Override
+			public String getUpsertClause(List<String> keyColumns, List<String> columns)
+			{
+				List<String> updates = new ArrayList<>(columns.size());
+				for (String column : columns)
+				{
+					if (!keyColumns.contains(column))
+						updates.add(column + " = EXCLUDED." + column);
+				}
+				String res = " ON CONFLICT (" + String.join(", ", keyColumns) + ")";
+				if (updates.isEmpty())
+					return res + " DO NOTHING";
+				return res + " DO UPDATE SET " + String.join(", ", updates);
+			}
+		};
+
+		public abstract boolean isType(String url);
+
+		public abstract boolean isPrimaryKeyDefinitionInsideColumnList();
+
+		public abstract String getDefaultSchemaName();
+
+		public abstract boolean isSystemSchema(String schema);
+
+		/**
+		 * @return true if the database supports comparing row values, i.e.
+		 *         <code>(COL1, COL2) &gt; (?, ?)</code>
+		 */
+		public abstract boolean supportsRowValueComparison();
+
+		/**
+		 * @return true if the JDBC driver returns the indices of all tables
+		 *         when {@link java.sql.DatabaseMetaData#getIndexInfo} is called
+		 *         without a table name
+		 */
+		public abstract boolean supportsIndexInfoOfAllTables();
+
+		/**
+		 * @param percent
+		 *            The percentage of the rows to sample
+		 * @return The clause to add after a table name in the FROM clause of a
+		 *         query to read a random sample of the rows of the table
+		 */
+		public abstract String getTableSampleClause(double percent);
+
+		/**
+		 * @param keyColumns
+		 *            The primary key columns of the table
+		 * @param columns
+		 *            The columns of the INSERT statement
+		 * @return The clause to add after the VALUES list of an INSERT
+		 *         statement to update the existing record if a record with the
+		 *         same primary key already exists
+		 */
+		public abstract String getUpsertClause(List<String> keyColumns, List<String> columns);
+
+		public static DatabaseType getType(String url)
+		{
+			for (DatabaseType type : DatabaseType.values())
+				if (type.isType(url))
+					return type;
+			return null;
+		}
+	}
+
+	private final Properties properties = new Properties();
+
+	private ConvertMode tableConvertMode;
+
+	private ConvertMode dataConvertMode;
+
+	/**
+	 * The maximum number of DDL statements that are executed as one batch
+	 */
+	private Integer ddlBatchSize;
+
+	/**
+	 * Create the secondary indices after the data has been copied
+	 */
+	private Boolean deferIndexCreation;
+
+	/**
+	 * The maximum number of indices that are created at the same time when
+	 * index creation is deferred
+	 */
+	private Integer indexCreationParallelism;
+
+	/**
+	 * Interleave tables in the parent that is referenced by a foreign key on
+	 * the first columns of their primary key
+	 */
+	private Boolean inferInterleavedTables;
+
+	private Integer numberOfTableWorkers;
+
+	private Integer batchSize;
+
+	private Integer maxNumberOfWorkers;
+
+	/**
+	 * The maximum number of threads of part workers and their pipeline
+	 * writers of all tables running in parallel
+	 */
+	private Integer maxConcurrentWorkers;
+
+	/**
+	 * The way upload workers read their part of a source table
+	 */
+	private ReadMode readMode;
+
+	/**
+	 * The way the key ranges of the workers of a table are determined
+	 */
+	private SplitMethod splitMethod;
+
+	/**
+	 * The way records are written to the destination
+	 */
+	private WriteMode writeMode;
+
+	/**
+	 * The number of rows to fetch from the source database in one round trip
+	 * when streaming a source table
+	 */
+	private Integer fetchSize;
+
+	/**
+	 * Maximum time to wait for a table worker to finish in minutes
+	 */
+	private Integer tableWorkerMaxWaitInMinutes;
+
+	/**
+	 * Maximum time to wait for an upload worker to finish in minutes
+	 */
+	private Integer uploadWorkerMaxWaitInMinutes;
+
+	private Boolean useJdbcBatching;
+
+	private Integer maxStatementsInOneJdbcBatch;
+
+	/**
+	 * Read from the source and write to the destination in separate threads
+	 */
+	private Boolean usePipelinedCopy;
+
+	/**
+	 * Copy the values of each column with the getter and setter for the type
+	 * of the column instead of getObject and setObject
+	 */
+	private Boolean useColumnBinders;
+
+	/**
+	 * The maximum number of connections to the source database that are open
+	 * at the same time
+	 */
+	private Integer maxSourceConnections;
+
+	/**
+	 * The maximum number of connections to the destination database that are
+	 * open at the same time
+	 */
+	private Integer maxDestinationConnections;
+
+	/**
+	 * The number of writer threads for each upload worker when copying is
+	 * pipelined
+	 */
+	private Integer numberOfPipelineWriters;
+
+	/**
+	 * The maximum number of batches that may be waiting to be written for
+	 * each upload worker when copying is pipelined
+	 */
+	private Integer pipelineQueueCapacity;
+
+	/**
+	 * Change the batch size of each worker based on the size and latency of
+	 * its commits
+	 */
+	private Boolean adaptiveBatchSize;
+
+	/**
+	 * The commit latency that adaptive batch sizing aims for
+	 */
+	private Integer targetCommitLatencyMillis;
+
+	/**
+	 * The file to record the progress of the data copy in
+	 */
+	private String checkpointFile;
+
+	/**
+	 * Resume the data copy from the checkpoints of a previous run
+	 */
+	private Boolean resume;
+
+	/**
+	 * Publish the metrics of the data copy as MXBeans
+	 */
+	private Boolean jmxMetrics;
+
+	/**
+	 * The file to write the metrics of the data copy to in the Prometheus text
+	 * format
+	 */
+	private String metricsFile;
+
+	/**
+	 * The number of seconds between two writes of the metrics file
+	 */
+	private Integer metricsIntervalSeconds;
+
+	/**
+	 * The number of seconds between two progress reports of the data copy, or
+	 * 0 if no progress should be reported
+	 */
+	private Integer progressIntervalSeconds;
+
+	private ProgressFormat progressFormat;
+
+	/**
+	 * The order in which the upload workers of the tables are started
+	 */
+	private TableOrder tableOrder;
+
+	/**
+	 * The tables to copy first when the table order is Priority
+	 */
+	private List<String> tablePriority;
+
+	private final String urlSource;
+
+	private final String urlDestination;
+
+	private String catalog;
+
+	private String schema;
+
+	/**
+	 * Cloud Spanner has a strict limit on the size of one transaction. When
+	 * deleting large tables, the delete needs to be chopped into several delete
+	 * statements to avoid exceeding the transaction limit
+	 */
+	private Long maxRecordsInSingleDeleteStatement;
+
+	/**
+	 * The way the data of a table is deleted in DropAndRecreate mode
+	 */
+	private DeleteMode deleteMode;
+
+	/**
+	 * The file to store the watermark of each table in when the data convert
+	 * mode is Incremental
+	 */
+	private String watermarkFile;
+
+	/**
+	 * The minimum number of records of a PostgreSQL table that is truncated
+	 * instead of deleted in Auto delete mode
+	 */
+	private Long truncateMinRecords;
+
+	/**
+	 * The minimum number of records of a Cloud Spanner table that is dropped
+	 * and recreated instead of deleted in Auto delete mode
+	 */
+	private Long recreateMinRecords;
+
+	/**
+	 * Create a default converter configuration
+	 */
+	public ConverterConfiguration(String urlSource, String urlDestination)
+	{
+		this.urlSource = urlSource;
+		this.urlDestination = urlDestination;
+		tableConvertMode = ConvertMode.SkipExisting;
+		dataConvertMode = ConvertMode.SkipExisting;
+	}
+
+	/**
+	 * Create a converter configuration from a properties file
+	 */
+	public ConverterConfiguration(String urlSource, String urlDestination, URI file) throws IOException
+	{
+		this.urlSource = urlSource;
+		this.urlDestination = urlDestination;
+		properties.load(Files.newBufferedReader(Paths.get(file)));
+	}
+
+	public ConvertMode getTableConvertMode()
+	{
+		if (tableConvertMode == null)
+		{
+			tableConvertMode = ConvertMode.valueOf(ConvertMode.class,
+					properties.getProperty("TableConverter.convertMode", ConvertMode.SkipExisting.name()));
+		}
+		return tableConvertMode;
+	}
+
+	public ConvertMode getDataConvertMode()
+	{
+		if (dataConvertMode == null)
+		{
+			dataConvertMode = ConvertMode.valueOf(ConvertMode.class,
+					properties.getProperty("DataConverter.convertMode", ConvertMode.SkipExisting.name()));
+		}
+		return dataConvertMode;
+	}
+
+	/**
+	 * @return true if records are written with insert-or-update semantics,
+	 *         so records that already exist in the destination are updated
+	 *         instead of causing the copy to fail
+	 */
+	public boolean isUpsertData()
+	{
+		ConvertMode mode = getDataConvertMode();
+		return mode == ConvertMode.Incremental || mode == ConvertMode.Merge;
+	}
+
+	public Integer getDdlBatchSize()
+	{
+		if (ddlBatchSize == null)
+		{
+			ddlBatchSize = Integer.valueOf(properties.getProperty("TableConverter.ddlBatchSize", "100"));
+		}
+		return ddlBatchSize;
+	}
+
+	public boolean isDeferIndexCreation()
+	{
+		if (deferIndexCreation == null)
+		{
+			deferIndexCreation = Boolean
+					.valueOf(properties.getProperty("TableConverter.deferIndexCreation", "false"));
+		}
+		return deferIndexCreation.booleanValue();
+	}
+
+	public Integer getIndexCreationParallelism()
+	{
+		if (indexCreationParallelism == null)
+		{
+			indexCreationParallelism = Integer
+					.valueOf(properties.getProperty("TableConverter.indexCreationParallelism", "4"));
+		}
+		return indexCreationParallelism;
+	}
+
+	public boolean isInferInterleavedTables()
+	{
+		if (inferInterleavedTables == null)
+		{
+			inferInterleavedTables = Boolean
+					.valueOf(properties.getProperty("TableConverter.inferInterleavedTables", "false"));
+		}
+		return inferInterleavedTables.booleanValue();
+	}
+
+	public Integer getBatchSize()
+	{
+		if (batchSize == null)
+		{
+			batchSize = Integer.valueOf(properties.getProperty("DataConverter.batchSize", "1500000"));
+		}
+		return batchSize;
+	}
+
+	public Integer getNumberOfTableWorkers()
+	{
+		if (numberOfTableWorkers == null)
+		{
+			numberOfTableWorkers = Integer.valueOf(properties.getProperty("DataConverter.numberOfTableWorkers", "10"));
+		}
+		return numberOfTableWorkers;
+	}
+
+	public Integer getMaxNumberOfWorkers()
+	{
+		if (maxNumberOfWorkers == null)
+		{
+			maxNumberOfWorkers = Integer.valueOf(properties.getProperty("DataConverter.maxNumberOfWorkers", "10"));
+		}
+		return maxNumberOfWorkers;
+	}
+
+	public Integer getMaxConcurrentWorkers()
+	{
+		if (maxConcurrentWorkers == null)
+		{
+			maxConcurrentWorkers = Integer.valueOf(properties.getProperty("DataConverter.maxConcurrentWorkers", "16"));
+		}
+		return maxConcurrentWorkers;
+	}
+
+	/**
+	 * @return The number of part workers that may run at the same time. The
+	 *         writer threads of a pipelined worker count against
+	 *         maxConcurrentWorkers as well.
+	 */
+	public int getMaxConcurrentPartWorkers()
+	{
+		int threadsPerWorker = isUsePipelinedCopy() ? getNumberOfPipelineWriters() + 1 : 1;
+		return Math.max(getMaxConcurrentWorkers() / threadsPerWorker, 1);
+	}
+
+	public Integer getMaxSourceConnections()
+	{
+		if (maxSourceConnections == null)
+		{
+			maxSourceConnections = Integer.valueOf(properties.getProperty("DataConverter.maxSourceConnections",
+					String.valueOf(getMinSourceConnections())));
+		}
+		return maxSourceConnections;
+	}
+
+	/**
+	 * @return The number of connections to the source database that the
+	 *         workers need to be able to run at the same time
+	 */
+	public int getMinSourceConnections()
+	{
+		// One connection for each worker and one for preparing the workers
+		return getMaxConcurrentPartWorkers() + 1;
+	}
+
+	public Integer getMaxDestinationConnections()
+	{
+		if (maxDestinationConnections == null)
+		{
+			maxDestinationConnections = Integer.valueOf(properties.getProperty(
+					"DataConverter.maxDestinationConnections", String.valueOf(getMinDestinationConnections())));
+		}
+		return maxDestinationConnections;
+	}
+
+	/**
+	 * @return The number of connections to the destination database that the
+	 *         workers need to be able to run at the same time
+	 */
+	public int getMinDestinationConnections()
+	{
+		// Delete workers use two connections, pipelined upload workers one
+		// for each writer and one for the worker itself, and one connection
+		// is used for preparing the workers
+		int connectionsPerWorker = isUsePipelinedCopy() ? getNumberOfPipelineWriters() + 1 : 2;
+		return getMaxConcurrentPartWorkers() * Math.max(connectionsPerWorker, 2) + 1;
+	}
+
+	public ReadMode getReadMode()
+	{
+		if (readMode == null)
+		{
+			readMode = ReadMode.valueOf(ReadMode.class,
+					properties.getProperty("DataConverter.readMode", ReadMode.OffsetPaging.name()));
+		}
+		return readMode;
+	}
+
+	public DeleteMode getDeleteMode()
+	{
+		if (deleteMode == null)
+		{
+			deleteMode = DeleteMode.valueOf(DeleteMode.class,
+					properties.getProperty("DataConverter.deleteMode", DeleteMode.Auto.name()));
+		}
+		return deleteMode;
+	}
+
+	public Long getTruncateMinRecords()
+	{
+		if (truncateMinRecords == null)
+		{
+			truncateMinRecords = Long.valueOf(properties.getProperty("DataConverter.truncateMinRecords", "1"));
+		}
+		return truncateMinRecords;
+	}
+
+	public Long getRecreateMinRecords()
+	{
+		if (recreateMinRecords == null)
+		{
+			recreateMinRecords = Long
+					.valueOf(properties.getProperty("DataConverter.recreateMinRecords", "1000000"));
+		}
+		return recreateMinRecords;
+	}
+
+	public SplitMethod getSplitMethod()
+	{
+		if (splitMethod == null)
+		{
+			splitMethod = SplitMethod.valueOf(SplitMethod.class,
+					properties.getProperty("DataConverter.splitMethod", SplitMethod.Auto.name()));
+		}
+		return splitMethod;
+	}
+
+	public WriteMode getWriteMode()
+	{
+		if (writeMode == null)
+		{
+			writeMode = WriteMode.valueOf(WriteMode.class,
+					properties.getProperty("DataConverter.writeMode", WriteMode.JdbcInsert.name()));
+		}
+		return writeMode;
+	}
+
+	public Integer getFetchSize()
+	{
+		if (fetchSize == null)
+		{
+			fetchSize = Integer.valueOf(properties.getProperty("DataConverter.fetchSize", "1000"));
+		}
+		return fetchSize;
+	}
+
+	public Integer getTableWorkerMaxWaitInMinutes()
+	{
+		if (tableWorkerMaxWaitInMinutes == null)
+		{
+			tableWorkerMaxWaitInMinutes = Integer
+					.valueOf(properties.getProperty("DataConverter.tableWorkerMaxWaitInMinutes", "60"));
+		}
+		return tableWorkerMaxWaitInMinutes;
+	}
+
+	public Integer getUploadWorkerMaxWaitInMinutes()
+	{
+		if (uploadWorkerMaxWaitInMinutes == null)
+		{
+			uploadWorkerMaxWaitInMinutes = Integer
+					.valueOf(properties.getProperty("DataConverter.uploadWorkerMaxWaitInMinutes", "60"));
+		}
+		return uploadWorkerMaxWaitInMinutes;
+	}
+
+	public boolean isUseJdbcBatching()
+	{
+		if (useJdbcBatching == null)
+		{
+			useJdbcBatching = Boolean.valueOf(properties.getProperty("DataConverter.useJdbcBatching", "true"));
+		}
+		return useJdbcBatching.booleanValue();
+	}
+
+	public Integer getMaxStatementsInOneJdbcBatch()
+	{
+		if (maxStatementsInOneJdbcBatch == null)
+		{
+			maxStatementsInOneJdbcBatch = Integer
+					.valueOf(properties.getProperty("DataConverter.maxStatementsInOneJdbcBatch", "10000"));
+		}
+		return maxStatementsInOneJdbcBatch;
+	}
+
+	public boolean isUsePipelinedCopy()
+	{
+		if (usePipelinedCopy == null)
+		{
+			usePipelinedCopy = Boolean.valueOf(properties.getProperty("DataConverter.usePipelinedCopy", "false"));
+		}
+		return usePipelinedCopy.booleanValue();
+	}
+
+	public boolean isUseColumnBinders()
+	{
+		if (useColumnBinders == null)
+		{
+			useColumnBinders = Boolean.valueOf(properties.getProperty("DataConverter.useColumnBinders", "true"));
+		}
+		return useColumnBinders.booleanValue();
+	}
+
+	public Integer getNumberOfPipelineWriters()
+	{
+		if (numberOfPipelineWriters == null)
+		{
+			numberOfPipelineWriters = Integer
+					.valueOf(properties.getProperty("DataConverter.numberOfPipelineWriters", "1"));
+		}
+		return numberOfPipelineWriters;
+	}
+
+	public Integer getPipelineQueueCapacity()
+	{
+		if (pipelineQueueCapacity == null)
+		{
+			pipelineQueueCapacity = Integer.valueOf(properties.getProperty("DataConverter.pipelineQueueCapacity", "4"));
+		}
+		return pipelineQueueCapacity;
+	}
+
+	public boolean isAdaptiveBatchSize()
+	{
+		if (adaptiveBatchSize == null)
+		{
+			adaptiveBatchSize = Boolean
+					.valueOf(properties.getProperty("DataConverter.adaptiveBatchSize", "false"));
+		}
+		return adaptiveBatchSize.booleanValue();
+	}
+
+	public Integer getTargetCommitLatencyMillis()
+	{
+		if (targetCommitLatencyMillis == null)
+		{
+			targetCommitLatencyMillis = Integer
+					.valueOf(properties.getProperty("DataConverter.targetCommitLatencyMillis", "1000"));
+		}
+		return targetCommitLatencyMillis;
+	}
+
+	public String getCheckpointFile()
+	{
+		if (checkpointFile == null)
+		{
+			checkpointFile = properties.getProperty("DataConverter.checkpointFile", null);
+		}
+		return checkpointFile;
+	}
+
+	public boolean isResume()
+	{
+		if (resume == null)
+		{
+			resume = Boolean.valueOf(properties.getProperty("DataConverter.resume", "false"));
+		}
+		return resume.booleanValue();
+	}
+
+	public boolean isJmxMetrics()
+	{
+		if (jmxMetrics == null)
+		{
+			jmxMetrics = Boolean.valueOf(properties.getProperty("DataConverter.jmxMetrics", "true"));
+		}
+		return jmxMetrics.booleanValue();
+	}
+
+	public String getMetricsFile()
+	{
+		if (metricsFile == null)
+		{
+			metricsFile = properties.getProperty("DataConverter.metricsFile", null);
+		}
+		return metricsFile;
+	}
+
+	public Integer getMetricsIntervalSeconds()
+	{
+		if (metricsIntervalSeconds == null)
+		{
+			metricsIntervalSeconds = Integer
+					.valueOf(properties.getProperty("DataConverter.metricsIntervalSeconds", "10"));
+		}
+		return metricsIntervalSeconds;
+	}
+
+	public Integer getProgressIntervalSeconds()
+	{
+		if (progressIntervalSeconds == null)
+		{
+			progressIntervalSeconds = Integer
+					.valueOf(properties.getProperty("DataConverter.progressIntervalSeconds", "30"));
+		}
+		return progressIntervalSeconds;
+	}
+
+	public ProgressFormat getProgressFormat()
+	{
+		if (progressFormat == null)
+		{
+			progressFormat = ProgressFormat.valueOf(ProgressFormat.class,
+					properties.getProperty("DataConverter.progressFormat", ProgressFormat.Text.name()));
+		}
+		return progressFormat;
+	}
+
+	public TableOrder getTableOrder()
+	{
+		if (tableOrder == null)
+		{
+			tableOrder = TableOrder.valueOf(TableOrder.class,
+					properties.getProperty("DataConverter.tableOrder", TableOrder.Size.name()));
+		}
+		return tableOrder;
+	}
+
+	public List<String> getTablePriority()
+	{
+		if (tablePriority == null)
+		{
+			List<String> res = new ArrayList<>();
+			for (String table : properties.getProperty("DataConverter.tablePriority", "").split(","))
+			{
+				if (!table.trim().isEmpty())
+					res.add(table.trim());
+			}
+			tablePriority = Collections.unmodifiableList(res);
+		}
+		return tablePriority;
+	}
+
+	public String getCatalog()
+	{
+		if (catalog == null)
+		{
+			catalog = properties.getProperty("catalog", null);
+		}
+		return catalog;
+	}
+
+	public String getSchema()
+	{
+		if (schema == null)
+		{
+			schema = properties.getProperty("schema", null);
+		}
+		return schema;
+	}
+
+	public Map<String, String> getSpecificColumnMappings()
+	{
+		Map<String, String> res = new HashMap<>();
+		for (String key : properties.stringPropertyNames())
+		{
+			if (key.startsWith("TableConverter.specificColumnMapping."))
+			{
+				String column = key.substring("TableConverter.specificColumnMapping.".length());
+				String value = properties.getProperty(key);
+				res.put(column, value);
+			}
+		}
+
+		return res;
+	}
+
+	/**
+	 * @return The parent of each table that has been declared as interleaved,
+	 *         by the name of the table
+	 */
+	public Map<String, String> getInterleavedTables()
+	{
+		Map<String, String> res = new HashMap<>();
+		for (String key : properties.stringPropertyNames())
+		{
+			if (key.startsWith("TableConverter.interleave."))
+			{
+				String table = key.substring("TableConverter.interleave.".length());
+				res.put(table, properties.getProperty(key).trim());
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return The watermark column of each table that is copied incrementally
+	 *         by table name
+	 */
+	public Map<String, String> getWatermarkColumns()
+	{
+		Map<String, String> res = new HashMap<>();
+		for (String key : properties.stringPropertyNames())
+		{
+			if (key.startsWith("DataConverter.watermark."))
+			{
+				String table = key.substring("DataConverter.watermark.".length());
+				res.put(table, properties.getProperty(key).trim());
+			}
+		}
+		return res;
+	}
+
+	public String getWatermarkFile()
+	{
+		if (watermarkFile == null)
+		{
+			watermarkFile = properties.getProperty("DataConverter.watermarkFile", "watermarks.properties");
+		}
+		return watermarkFile;
+	}
+
+	public String getUrlSource()
+	{
+		return urlSource;
+	}
+
+	public String getUrlDestination()
+	{
+		return urlDestination;
+	}
+
+	public DatabaseType getSourceDatabaseType()
+	{
+		return DatabaseType.getType(urlSource);
+	}
+
+	public DatabaseType getDestinationDatabaseType()
+	{
+		return DatabaseType.getType(urlDestination);
+	}
+
+	public boolean isPrimaryKeyDefinitionInsideColumnList()
+	{
+		return getDestinationDatabaseType().isPrimaryKeyDefinitionInsideColumnList();
+	}
+
+	/**
+	 * @return The maximum number of records to delete with one statement or
+	 *         commit, or <code>null</code> if the limit should be determined
+	 *         by the destination. For Cloud Spanner destinations the limit
+	 *         also never exceeds the mutation limit of one commit.
+	 */
+	public Long getMaxRecordsInSingleDeleteStatement()
+	{
+		if (maxRecordsInSingleDeleteStatement == null)
+		{
+			String value = properties.getProperty("DataConverter.maxRecordsInSingleDeleteStatement");
+			if (value != null)
+				maxRecordsInSingleDeleteStatement = Long.valueOf(value);
+		}
+		return maxRecordsInSingleDeleteStatement;
+	}
+
+}
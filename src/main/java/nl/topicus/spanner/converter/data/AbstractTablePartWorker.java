@@ -1,127 +1,483 @@
-package nl.topicus.spanner.converter.data;
-
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.concurrent.Callable;
-import java.util.logging.Logger;
-
-import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
-import nl.topicus.spanner.converter.util.ConverterUtils;
-
-public abstract class AbstractTablePartWorker implements Callable<ConversionResult>
-{
-	private static final Logger log = Logger.getLogger(AbstractTablePartWorker.class.getName());
-
-	protected final ConverterConfiguration config;
-
-	protected final ConverterUtils converterUtils;
-
-	protected final String sourceTable;
-
-	private final String destinationTable;
-
-	protected final Columns insertCols;
-
-	private long byteCount;
-
-	private long actualRecordCount;
-
-	private Exception exception;
-
-	AbstractTablePartWorker(ConverterConfiguration config, String sourceTable)
-	{
-		this(config, sourceTable, null, null);
-	}
-
-	AbstractTablePartWorker(ConverterConfiguration config, String sourceTable, String destinationTable,
-			Columns insertCols)
-	{
-		this.config = config;
-		this.sourceTable = sourceTable;
-		this.destinationTable = destinationTable;
-		this.insertCols = insertCols;
-		this.converterUtils = new ConverterUtils(config);
-	}
-
-	@Override
-	public ConversionResult call() throws Exception
-	{
-		Exception exception = null;
-		long startTime = System.currentTimeMillis();
-		try
-		{
-			run();
-		}
-		catch (Exception e)
-		{
-			exception = e;
-		}
-		long endTime = System.currentTimeMillis();
-		return new ConversionResult(getRecordCount(), getByteCount(), startTime, endTime, exception);
-	}
-
-	protected PreparedStatement createInsertStatement(Connection destination) throws SQLException
-	{
-		String sql = "INSERT INTO " + destinationTable + " (" + insertCols.getColumnNames() + ") VALUES \n";
-		sql = sql + "(" + insertCols.getColumnParameters() + ")";
-		return destination.prepareStatement(sql);
-	}
-
-	protected void copyResultSet(ResultSet rs, PreparedStatement insertStatement) throws SQLException
-	{
-		while (rs.next())
-		{
-			int index = 1;
-			for (Integer type : insertCols.getColumnTypes())
-			{
-				Object object = rs.getObject(index);
-				insertStatement.setObject(index, object, type);
-				byteCount += converterUtils.getActualDataSize(type, object);
-				index++;
-			}
-			if (config.isUseJdbcBatching())
-			{
-				insertStatement.addBatch();
-			}
-			else
-			{
-				insertStatement.executeUpdate();
-			}
-			actualRecordCount++;
-			if (config.isUseJdbcBatching() && actualRecordCount % config.getMaxStatementsInOneJdbcBatch() == 0)
-			{
-				insertStatement.executeBatch();
-				log.info(toString() + " - Current record count for " + sourceTable + ": " + actualRecordCount);
-			}
-		}
-		if (config.isUseJdbcBatching())
-		{
-			insertStatement.executeBatch();
-		}
-	}
-
-	protected abstract void run() throws Exception;
-
-	protected long getByteCount()
-	{
-		return byteCount;
-	}
-
-	protected long getRecordCount()
-	{
-		return actualRecordCount;
-	}
-
-	Exception getException()
-	{
-		return exception;
-	}
-
-	void setException(Exception exception)
-	{
-		this.exception = exception;
-	}
-
-}
+package nl.topicus.spanner.converter.data;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.metrics.TableMetrics;
+import nl.topicus.spanner.converter.metrics.WorkerMetrics;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+
+public abstract class AbstractTablePartWorker implements Callable<ConversionResult>
+{
+	private static final Logger log = Logger.getLogger(AbstractTablePartWorker.class.getName());
+
+	protected final ConverterConfiguration config;
+
+	protected final ConverterUtils converterUtils;
+
+	protected final String sourceTable;
+
+	protected final String destinationTable;
+
+	protected final Columns insertCols;
+
+	/**
+	 * The pools to take source and destination connections from
+	 */
+	protected ConnectionPool sourcePool;
+
+	protected ConnectionPool destinationPool;
+
+	/**
+	 * The metrics of this worker. Not published unless the table worker sets
+	 * the published metrics before the worker is submitted.
+	 */
+	private WorkerMetrics metrics;
+
+	private long byteCount;
+
+	private long actualRecordCount;
+
+	/**
+	 * The byte and record count at the last commit when copying is not
+	 * pipelined
+	 */
+	private long committedByteCount;
+
+	private long committedRecordCount;
+
+	/**
+	 * The maximum number of records in one commit to the destination
+	 */
+	private int maxBatchSize = Integer.MAX_VALUE;
+
+	private BatchSizeController batchSizeController;
+
+	/**
+	 * The position in the primary key of each column, or -1 if the column is
+	 * not part of the primary key. <code>null</code> if the worker does not
+	 * keep track of the key of the last copied record.
+	 */
+	private int[] keyPositions;
+
+	private Object[] lastKeyValues;
+
+	private boolean hasLastKey;
+
+	private DestinationWriter writer;
+
+	private RowPipeline pipeline;
+
+	/**
+	 * Reusable array for reading records when copying is not pipelined
+	 */
+	private Object[] currentRow;
+
+	private Exception exception;
+
+	AbstractTablePartWorker(ConverterConfiguration config, String sourceTable)
+	{
+		this(config, sourceTable, null, null);
+	}
+
+	AbstractTablePartWorker(ConverterConfiguration config, String sourceTable, String destinationTable,
+			Columns insertCols)
+	{
+		this.config = config;
+		this.sourceTable = sourceTable;
+		this.destinationTable = destinationTable;
+		this.insertCols = insertCols;
+		this.converterUtils = new ConverterUtils(config);
+		this.metrics = new TableMetrics(sourceTable).getWorker(0);
+	}
+
+	void setMaxBatchSize(int maxBatchSize)
+	{
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	void setConnectionPools(ConnectionPool sourcePool, ConnectionPool destinationPool)
+	{
+		this.sourcePool = sourcePool;
+		this.destinationPool = destinationPool;
+	}
+
+	void setMetrics(WorkerMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	WorkerMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	@Override
+	public ConversionResult call() throws Exception
+	{
+		Exception exception = null;
+		long startTime = System.currentTimeMillis();
+		metrics.started();
+		try
+		{
+			run();
+		}
+		catch (Exception e)
+		{
+			exception = e;
+		}
+		finally
+		{
+			closePipeline();
+			metrics.finished();
+		}
+		long endTime = System.currentTimeMillis();
+		return new ConversionResult(getRecordCount(), getByteCount(), startTime, endTime, exception);
+	}
+
+	/**
+	 * @return true if records that already exist in the destination should be
+	 *         updated instead of inserted
+	 */
+	protected boolean isUpsert()
+	{
+		// Records that already exist in the destination are updated in
+		// Incremental and Merge mode
+		return config.isUpsertData();
+	}
+
+	protected DestinationWriter createDestinationWriter(Connection destination) throws SQLException
+	{
+		boolean upsert = isUpsert();
+		switch (config.getWriteMode())
+		{
+		case CloudSpannerMutations:
+			return new CloudSpannerMutationWriter(config, destination, destinationTable, insertCols, metrics, upsert);
+		case PostgreSQLCopy:
+			return new PostgreSQLCopyWriter(config, destination, destinationTable, insertCols, metrics, upsert);
+		case JdbcInsert:
+		default:
+			return new JdbcDestinationWriter(config, destination, destinationTable, insertCols, metrics, upsert);
+		}
+	}
+
+	/**
+	 * Prepares this worker for copying records to the given destination using
+	 * {@link #copyRecords(ResultSet, long)} or {@link #copyRecord(Object[])}.
+	 * If pipelined copying is enabled,
+	 * the records are written to the destination by separate writer threads
+	 * that each use their own connection and commit each batch of
+	 * {@link #getBatchSize()} records.
+	 * 
+	 * @param batchSize
+	 *            The initial number of records in each commit
+	 */
+	protected void startCopy(Connection destination, int batchSize) throws SQLException
+	{
+		batchSizeController = new BatchSizeController(sourceTable, config, batchSize, maxBatchSize);
+		if (config.isUsePipelinedCopy())
+			pipeline = new RowPipeline(this);
+		else
+			writer = createDestinationWriter(destination);
+	}
+
+	/**
+	 * Copies at most maxRecords records of the result set to the destination.
+	 * The result set is left positioned on the last copied record, so the
+	 * next call will continue with the next record.
+	 * 
+	 * @return The number of records read from the result set
+	 */
+	protected long copyRecords(ResultSet rs, long maxRecords) throws SQLException
+	{
+		if (pipeline == null && config.isUseColumnBinders() && writer instanceof ResultSetWriter)
+			return copyRecords(rs, maxRecords, (ResultSetWriter) writer);
+		int columnCount = insertCols.getColumns().size();
+		long count = 0;
+		long readNanos = 0L;
+		long startTime = System.nanoTime();
+		while (count < maxRecords && rs.next())
+		{
+			// Records that are handed over to a pipeline need their own array
+			Object[] row = pipeline == null ? getCurrentRow(columnCount) : new Object[columnCount];
+			for (int index = 0; index < columnCount; index++)
+			{
+				row[index] = rs.getObject(index + 1);
+			}
+			readNanos += System.nanoTime() - startTime;
+			copyRecord(row);
+			count++;
+			startTime = System.nanoTime();
+		}
+		metrics.read(readNanos + System.nanoTime() - startTime);
+		return count;
+	}
+
+	/**
+	 * Copies records directly from the result set to the writer, without
+	 * reading each record into an array first
+	 */
+	private long copyRecords(ResultSet rs, long maxRecords, ResultSetWriter writer) throws SQLException
+	{
+		long count = 0;
+		long readNanos = 0L;
+		long startTime = System.nanoTime();
+		while (count < maxRecords && rs.next())
+		{
+			readNanos += System.nanoTime() - startTime;
+			byteCount += writer.write(rs);
+			actualRecordCount++;
+			count++;
+			logRecordCount();
+			startTime = System.nanoTime();
+		}
+		metrics.read(readNanos + System.nanoTime() - startTime);
+		if (count > 0 && keyPositions != null)
+		{
+			for (int index = 0; index < keyPositions.length; index++)
+			{
+				if (keyPositions[index] > -1)
+					lastKeyValues[keyPositions[index]] = writer.getLastValue(index);
+			}
+			hasLastKey = true;
+		}
+		return count;
+	}
+
+	/**
+	 * Copies one record to the destination. The array may not be reused by the
+	 * caller when copying is pipelined.
+	 */
+	protected void copyRecord(Object[] row) throws SQLException
+	{
+		rememberKey(row);
+		if (pipeline != null)
+		{
+			pipeline.add(row);
+		}
+		else
+		{
+			byteCount += writer.write(row);
+			actualRecordCount++;
+			logRecordCount();
+		}
+	}
+
+	private void logRecordCount()
+	{
+		if (config.isUseJdbcBatching() && actualRecordCount % config.getMaxStatementsInOneJdbcBatch() == 0)
+		{
+			log.fine(toString() + " - Current record count for " + sourceTable + ": " + actualRecordCount);
+		}
+	}
+
+	private Object[] getCurrentRow(int columnCount)
+	{
+		if (currentRow == null)
+			currentRow = new Object[columnCount];
+		return currentRow;
+	}
+
+	/**
+	 * @return The number of records to copy before the next commit. The batch
+	 *         size may change after each commit if adaptive batch sizing is
+	 *         enabled.
+	 */
+	protected int getBatchSize()
+	{
+		return batchSizeController.getBatchSize();
+	}
+
+	/**
+	 * Commits the records that have been copied so far. Does nothing when
+	 * copying is pipelined, as the writers commit their own batches.
+	 */
+	protected void commitCopy() throws SQLException
+	{
+		if (pipeline == null)
+		{
+			commitWriter();
+		}
+	}
+
+	private void commitWriter() throws SQLException
+	{
+		long startTime = System.nanoTime();
+		writer.commit();
+		batchCommitted(actualRecordCount - committedRecordCount, byteCount - committedByteCount,
+				System.nanoTime() - startTime);
+		committedRecordCount = actualRecordCount;
+		committedByteCount = byteCount;
+		committed(getLastKey(), actualRecordCount);
+	}
+
+	/**
+	 * Reports the size and latency of a commit to the batch size controller
+	 */
+	void batchCommitted(long records, long bytes, long latencyNanos)
+	{
+		batchSizeController.committed(records, bytes, latencyNanos);
+		metrics.committed(records, bytes, latencyNanos);
+	}
+
+	/**
+	 * Writes and commits all records that have been copied, and waits for
+	 * pipelined writers to finish.
+	 */
+	protected void finishCopy() throws SQLException
+	{
+		if (pipeline != null)
+		{
+			pipeline.finish();
+			closePipeline();
+		}
+		else
+		{
+			try
+			{
+				commitWriter();
+			}
+			finally
+			{
+				closeWriter();
+			}
+		}
+	}
+
+	/**
+	 * Closes the writer of this worker if it has not been closed yet. Must be
+	 * called before the destination connection of the worker is closed, as
+	 * the connection is returned to the pool.
+	 */
+	protected void closeWriter() throws SQLException
+	{
+		if (writer != null)
+		{
+			DestinationWriter closing = writer;
+			writer = null;
+			closing.close();
+		}
+	}
+
+	/**
+	 * Called after records have been committed to the destination. When
+	 * copying is pipelined, this method is called by the writer threads, but
+	 * never concurrently and always in the order the records were read.
+	 * 
+	 * @param lastKey
+	 *            The primary key of the last committed record, or
+	 *            <code>null</code> if the worker does not keep track of the
+	 *            last key
+	 * @param records
+	 *            The total number of records committed by this worker
+	 */
+	protected void committed(List<Object> lastKey, long records)
+	{
+	}
+
+	private void closePipeline()
+	{
+		if (pipeline != null)
+		{
+			pipeline.close();
+			pipeline = null;
+		}
+	}
+
+	/**
+	 * Keep track of the primary key of the last record that was copied.
+	 */
+	protected void trackLastKey()
+	{
+		keyPositions = new int[insertCols.getColumns().size()];
+		Arrays.fill(keyPositions, -1);
+		int position = 0;
+		for (String pk : insertCols.getPrimaryKeyCols())
+		{
+			keyPositions[insertCols.getColumnIndex(pk)] = position;
+			position++;
+		}
+		lastKeyValues = new Object[insertCols.getPrimaryKeyCols().size()];
+	}
+
+	/**
+	 * @return The primary key of the last copied record, or <code>null</code>
+	 *         if no records have been copied or the worker does not keep
+	 *         track of the last key
+	 */
+	protected List<Object> getLastKey()
+	{
+		if (!hasLastKey)
+			return null;
+		return new ArrayList<>(Arrays.asList(lastKeyValues));
+	}
+
+	/**
+	 * @return The primary key of the given record, or <code>null</code> if the
+	 *         worker does not keep track of the last key
+	 */
+	List<Object> getKey(Object[] row)
+	{
+		if (keyPositions == null)
+			return null;
+		Object[] key = new Object[lastKeyValues.length];
+		for (int index = 0; index < row.length; index++)
+		{
+			if (keyPositions[index] > -1)
+				key[keyPositions[index]] = row[index];
+		}
+		return Arrays.asList(key);
+	}
+
+	void rememberKey(Object[] row)
+	{
+		if (keyPositions != null)
+		{
+			for (int index = 0; index < row.length; index++)
+			{
+				if (keyPositions[index] > -1)
+					lastKeyValues[keyPositions[index]] = row[index];
+			}
+			hasLastKey = true;
+		}
+	}
+
+	/**
+	 * Called by pipeline writers when a batch of records has been committed
+	 */
+	synchronized void addCopied(long records, long bytes)
+	{
+		actualRecordCount += records;
+		byteCount += bytes;
+	}
+
+	protected abstract void run() throws Exception;
+
+	protected long getByteCount()
+	{
+		return byteCount;
+	}
+
+	protected long getRecordCount()
+	{
+		return actualRecordCount;
+	}
+
+	Exception getException()
+	{
+		return exception;
+	}
+
+	void setException(Exception exception)
+	{
+		this.exception = exception;
+	}
+
+}
@@ -1,100 +1,159 @@
-package nl.topicus.spanner.converter.data;
-
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.logging.Logger;
-
-import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
-import nl.topicus.spanner.converter.util.ConverterUtils;
-
-public abstract class AbstractTableWorker implements Callable<ConversionResult>
-{
-	private static final Logger log = Logger.getLogger(AbstractTableWorker.class.getName());
-
-	public static enum Status
-	{
-		CREATED, PREPARING, PREPARED, RUNNING, FINISHED
-	}
-
-	private Status status = Status.CREATED;
-
-	protected final String table;
-
-	protected final ConverterConfiguration config;
-
-	protected final ConverterUtils converterUtils;
-
-	private int numberOfWorkers;
-
-	private Exception exception;
-
-	private long startTime;
-
-	private long endTime;
-
-	private List<? extends Callable<ConversionResult>> workers;
-
-	private ExecutorService service;
-
-	private List<Future<ConversionResult>> futures;
-
-	AbstractTableWorker(String table, ConverterConfiguration config)
-	{
-		this.table = table;
-		this.config = config;
-		this.converterUtils = new ConverterUtils(config);
-	}
-
-	public void prepare(Connection source, Connection destination) throws SQLException
-	{
-		status = Status.PREPARING;
-		workers = prepareWorkers(source, destination);
-		numberOfWorkers = workers.size();
-		status = Status.PREPARED;
-	}
-
-	protected abstract List<? extends AbstractTablePartWorker> prepareWorkers(Connection source, Connection destination)
-			throws SQLException;
-
-	public abstract long getTotalRecordCount();
-
-	@Override
-	public ConversionResult call() throws Exception
-	{
-		status = Status.RUNNING;
-		service = Executors.newFixedThreadPool(numberOfWorkers);
-		futures = new ArrayList<>(workers.size());
-		startTime = System.currentTimeMillis();
-		for (Callable<ConversionResult> worker : workers)
-		{
-			futures.add(service.submit(worker));
-		}
-		service.shutdown();
-		try
-		{
-			service.awaitTermination(config.getTableWorkerMaxWaitInMinutes(), TimeUnit.MINUTES);
-		}
-		catch (InterruptedException e)
-		{
-			service.shutdownNow();
-			log.severe("Error while waiting for upload workers to finish: " + e.getMessage());
-			exception = e;
-		}
-		endTime = System.currentTimeMillis();
-		status = Status.FINISHED;
-		return ConversionResult.collect(futures, startTime, endTime, exception);
-	}
-
-	public Status getStatus()
-	{
-		return status;
-	}
-
-}
+package nl.topicus.spanner.converter.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.metrics.TableMetrics;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+import nl.topicus.spanner.converter.util.SchemaCatalog;
+
+public abstract class AbstractTableWorker
+{
+	public static enum Status
+	{
+		CREATED, PREPARING, PREPARED, RUNNING, FINISHED
+	}
+
+	private volatile Status status = Status.CREATED;
+
+	protected final String table;
+
+	protected final ConverterConfiguration config;
+
+	protected final ConverterUtils converterUtils;
+
+	private int numberOfWorkers;
+
+	private long startTime;
+
+	private List<? extends AbstractTablePartWorker> workers;
+
+	private List<Future<ConversionResult>> futures;
+
+	AbstractTableWorker(String table, ConverterConfiguration config, SchemaCatalog destinationCatalog)
+	{
+		this.table = table;
+		this.config = config;
+		this.converterUtils = new ConverterUtils(config, destinationCatalog);
+	}
+
+	public void prepare(Connection source, Connection destination) throws SQLException
+	{
+		status = Status.PREPARING;
+		workers = prepareWorkers(source, destination);
+		numberOfWorkers = workers.size();
+		status = Status.PREPARED;
+	}
+
+	protected abstract List<? extends AbstractTablePartWorker> prepareWorkers(Connection source, Connection destination)
+			throws SQLException;
+
+	public abstract long getTotalRecordCount();
+
+	/**
+	 * Marks this table as running and prepares its part workers for
+	 * submission. The part workers take their connections from the given pools
+	 * and record their progress in the given metrics.
+	 */
+	void start(ConnectionPool sourcePool, ConnectionPool destinationPool, TableMetrics metrics)
+	{
+		status = Status.RUNNING;
+		futures = new ArrayList<>(workers.size());
+		startTime = System.currentTimeMillis();
+		int index = 0;
+		for (AbstractTablePartWorker worker : workers)
+		{
+			worker.setConnectionPools(sourcePool, destinationPool);
+			worker.setMetrics(metrics.getWorker(index++));
+		}
+	}
+
+	/**
+	 * Submits the next part worker of this table to the given executor. The
+	 * executor is shared by all tables, so the part worker will run as soon as
+	 * a thread of the executor is available.
+	 *
+	 * @return false if all part workers had already been submitted
+	 */
+	boolean submitNext(ExecutorService service)
+	{
+		if (futures.size() == workers.size())
+			return false;
+		AbstractTablePartWorker worker = workers.get(futures.size());
+		worker.getMetrics().queued();
+		futures.add(service.submit(worker));
+		return true;
+	}
+
+	/**
+	 * Submits all remaining part workers of this table to the given executor
+	 */
+	void submitAll(ExecutorService service)
+	{
+		while (futures.size() < workers.size())
+			submitNext(service);
+	}
+
+	/**
+	 * @return The combined result of all part workers of this table. May only
+	 *         be called after all part workers have finished.
+	 */
+	ConversionResult getResult()
+	{
+		long endTime = startTime;
+		for (Future<ConversionResult> future : futures)
+		{
+			try
+			{
+				if (future.isDone() && !future.isCancelled())
+					endTime = Math.max(endTime, future.get().getEndTime());
+			}
+			catch (Exception e)
+			{
+				// ignore, the exception is reported by the part worker
+			}
+		}
+		status = Status.FINISHED;
+		return ConversionResult.collect(futures, startTime, endTime, null);
+	}
+
+	/**
+	 * @return true if all part workers of this table have finished without an
+	 *         exception. May only be called after all part workers have
+	 *         finished.
+	 */
+	boolean isSuccessful()
+	{
+		if (futures == null || futures.size() < workers.size())
+			return false;
+		for (Future<ConversionResult> future : futures)
+		{
+			try
+			{
+				if (!future.isDone() || future.isCancelled() || future.get().getException() != null)
+					return false;
+			}
+			catch (Exception e)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getNumberOfWorkers()
+	{
+		return numberOfWorkers;
+	}
+
+	public Status getStatus()
+	{
+		return status;
+	}
+
+}
@@ -0,0 +1,129 @@
+package nl.topicus.spanner.converter.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+
+/**
+ * Determines the number of records in each commit of one part worker. The
+ * initial batch size is estimated from the definition of the table. If
+ * adaptive batch sizing is enabled, the controller measures the number of
+ * bytes and the latency of each commit and changes the batch size so that the
+ * next commits stay close to the configured commit size (only for Cloud
+ * Spanner destinations) and commit latency. The batch size never exceeds the
+ * maximum batch size, which is the number of records that can be committed to
+ * Cloud Spanner without exceeding the mutation limit.
+ */
+final class BatchSizeController
+{
+	private static final Logger log = Logger.getLogger(BatchSizeController.class.getName());
+
+	private static final int MIN_BATCH_SIZE = 10;
+
+	/**
+	 * The batch size will at most double after each commit
+	 */
+	private static final int MAX_GROWTH_PER_COMMIT = 2;
+
+	/**
+	 * The batch size will never grow beyond this factor times the initial
+	 * batch size, unless there is a limit on the size of each commit
+	 */
+	private static final int MAX_GROWTH = 10;
+
+	/**
+	 * The weight of the last commit in the averages per record
+	 */
+	private static final double SMOOTHING = 0.5;
+
+	/**
+	 * Changes of less than this fraction of the current batch size are
+	 * ignored, so the source statements do not have to be prepared again after
+	 * each commit
+	 */
+	private static final double MIN_CHANGE = 0.1;
+
+	private final String name;
+
+	private final boolean adaptive;
+
+	/**
+	 * The target number of bytes in one commit, or 0 if there is no target
+	 */
+	private final long targetCommitBytes;
+
+	private final long targetCommitLatencyNanos;
+
+	private final int maxBatchSize;
+
+	private int batchSize;
+
+	private double bytesPerRecord = -1d;
+
+	private double nanosPerRecord = -1d;
+
+	BatchSizeController(String name, ConverterConfiguration config, int initialBatchSize, int maxBatchSize)
+	{
+		boolean cloudSpanner = config.getDestinationDatabaseType() == DatabaseType.CloudSpanner;
+		this.name = name;
+		this.adaptive = config.isAdaptiveBatchSize();
+		// The batch size is given in bytes when the destination is Cloud
+		// Spanner
+		this.targetCommitBytes = cloudSpanner ? config.getBatchSize() : 0L;
+		this.targetCommitLatencyNanos = TimeUnit.MILLISECONDS.toNanos(config.getTargetCommitLatencyMillis());
+		long limit = targetCommitBytes > 0L ? maxBatchSize : (long) initialBatchSize * MAX_GROWTH;
+		this.maxBatchSize = (int) Math.max(Math.min(limit, maxBatchSize), MIN_BATCH_SIZE);
+		this.batchSize = adaptive ? Math.min(initialBatchSize, this.maxBatchSize) : initialBatchSize;
+	}
+
+	/**
+	 * @return The number of records to copy before the next commit
+	 */
+	synchronized int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/**
+	 * Records the result of a commit and adjusts the batch size if adaptive
+	 * batch sizing is enabled
+	 *
+	 * @param records
+	 *            The number of records in the commit
+	 * @param bytes
+	 *            The number of bytes in the commit
+	 * @param latencyNanos
+	 *            The time the commit took
+	 */
+	synchronized void committed(long records, long bytes, long latencyNanos)
+	{
+		if (!adaptive || records == 0L)
+			return;
+		bytesPerRecord = smooth(bytesPerRecord, (double) bytes / records);
+		nanosPerRecord = smooth(nanosPerRecord, (double) latencyNanos / records);
+
+		double target = (double) batchSize * MAX_GROWTH_PER_COMMIT;
+		if (targetCommitBytes > 0L && bytesPerRecord > 0d)
+			target = Math.min(target, targetCommitBytes / bytesPerRecord);
+		if (nanosPerRecord > 0d)
+			target = Math.min(target, targetCommitLatencyNanos / nanosPerRecord);
+		int newBatchSize = (int) Math.max(Math.min(target, maxBatchSize), MIN_BATCH_SIZE);
+		if (Math.abs(newBatchSize - batchSize) > batchSize * MIN_CHANGE)
+		{
+			log.fine(name + ": Changing batch size from " + batchSize + " to " + newBatchSize + " (" + records
+					+ " records, " + bytes + " bytes, " + TimeUnit.NANOSECONDS.toMillis(latencyNanos)
+					+ " ms in last commit)");
+			batchSize = newBatchSize;
+		}
+	}
+
+	private static double smooth(double average, double value)
+	{
+		if (average < 0d)
+			return value;
+		return SMOOTHING * value + (1d - SMOOTHING) * average;
+	}
+
+}
@@ -0,0 +1,293 @@
+package nl.topicus.spanner.converter.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal on local disk that records the progress of the upload
+ * workers of a data copy. For each table and worker it records the key range
+ * of the worker, the key or offset of the last committed record after each
+ * commit, and whether the worker has finished. A copy that is resumed reads
+ * the journal of the previous run to skip finished workers and to restart
+ * unfinished workers from their last checkpoint.
+ *
+ * Each entry is one tab separated line. The journal is flushed after each
+ * entry, but not synced to disk, so writing a checkpoint does not slow down
+ * the copy. Incomplete lines at the end of the journal are ignored.
+ */
+final class CheckpointJournal implements Closeable
+{
+	private static final Logger log = Logger.getLogger(CheckpointJournal.class.getName());
+
+	private static final String RANGE = "RANGE";
+
+	private static final String KEY = "KEY";
+
+	private static final String OFFSET = "OFFSET";
+
+	private static final String DONE = "DONE";
+
+	private static final String NO_KEY = "-";
+
+	/**
+	 * The progress of one worker as recorded in the journal
+	 */
+	static final class WorkerCheckpoint
+	{
+		KeyRange range;
+
+		List<Object> lastKey;
+
+		long offset = -1L;
+
+		boolean finished;
+	}
+
+	/**
+	 * The checkpoints of the previous run per table and worker
+	 */
+	private final Map<String, Map<String, WorkerCheckpoint>> previous = new HashMap<>();
+
+	private final BufferedWriter writer;
+
+	/**
+	 * Opens the journal at the given path. If resume is true, the entries of
+	 * the previous run are read and new entries are appended. Otherwise, the
+	 * journal is truncated.
+	 */
+	CheckpointJournal(String file, boolean resume) throws IOException
+	{
+		Path path = Paths.get(file);
+		if (resume && Files.exists(path))
+		{
+			read(path);
+			writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		}
+		else
+		{
+			writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		}
+	}
+
+	/**
+	 * @return The checkpoints of all workers of the given table in the
+	 *         previous run, in the order they were started
+	 */
+	Map<String, WorkerCheckpoint> getCheckpoints(String table)
+	{
+		Map<String, WorkerCheckpoint> res = previous.get(table);
+		return res == null ? Collections.emptyMap() : res;
+	}
+
+	boolean hasCheckpoints(String table)
+	{
+		return previous.containsKey(table);
+	}
+
+	/**
+	 * Records that a worker has been created for a table. All workers of a
+	 * table are recorded before copying starts, so a resumed copy also knows
+	 * the ranges of the workers that never started. The range is
+	 * <code>null</code> for workers that use offset paging.
+	 */
+	void planned(String table, String worker, KeyRange range)
+	{
+		if (range == null)
+			append(RANGE, table, worker);
+		else
+			append(RANGE, table, worker, encodeKey(range.beginKey), encodeKey(range.endKey));
+	}
+
+	void checkpoint(String table, String worker, List<Object> lastKey)
+	{
+		if (lastKey != null)
+			append(KEY, table, worker, encodeKey(lastKey));
+	}
+
+	void checkpoint(String table, String worker, long offset)
+	{
+		append(OFFSET, table, worker, String.valueOf(offset));
+	}
+
+	void finished(String table, String worker)
+	{
+		append(DONE, table, worker);
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		writer.close();
+	}
+
+	private synchronized void append(String... fields)
+	{
+		try
+		{
+			writer.write(String.join("\t", fields));
+			writer.newLine();
+			writer.flush();
+		}
+		catch (IOException e)
+		{
+			// A failing journal should not fail the copy itself
+			log.warning("Could not write checkpoint: " + e.getMessage());
+		}
+	}
+
+	private void read(Path path) throws IOException
+	{
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				try
+				{
+					readEntry(line.split("\t", -1));
+				}
+				catch (RuntimeException e)
+				{
+					log.warning("Skipping invalid checkpoint entry: " + line);
+				}
+			}
+		}
+	}
+
+	private void readEntry(String[] fields)
+	{
+		Map<String, WorkerCheckpoint> table = previous.computeIfAbsent(fields[1], k -> new LinkedHashMap<>());
+		WorkerCheckpoint checkpoint = table.computeIfAbsent(fields[2], k -> new WorkerCheckpoint());
+		switch (fields[0])
+		{
+		case RANGE:
+			if (fields.length == 5)
+				checkpoint.range = new KeyRange(decodeKey(fields[3]), decodeKey(fields[4]));
+			break;
+		case KEY:
+			checkpoint.lastKey = decodeKey(fields[3]);
+			break;
+		case OFFSET:
+			checkpoint.offset = Long.parseLong(fields[3]);
+			break;
+		case DONE:
+			checkpoint.finished = true;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown entry type " + fields[0]);
+		}
+	}
+
+	static String encodeKey(List<Object> key)
+	{
+		if (key == null)
+			return NO_KEY;
+		List<String> res = new ArrayList<>(key.size());
+		for (Object value : key)
+		{
+			res.add(encodeValue(value));
+		}
+		return String.join(",", res);
+	}
+
+	static List<Object> decodeKey(String key)
+	{
+		if (NO_KEY.equals(key))
+			return null;
+		String[] values = key.split(",", -1);
+		List<Object> res = new ArrayList<>(values.length);
+		for (String value : values)
+		{
+			res.add(decodeValue(value));
+		}
+		return res;
+	}
+
+	private static String encodeValue(Object value)
+	{
+		if (value == null)
+			return "N:";
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return "L:" + value;
+		if (value instanceof BigDecimal)
+			return "D:" + ((BigDecimal) value).toPlainString();
+		if (value instanceof Number)
+			return "F:" + ((Number) value).doubleValue();
+		if (value instanceof Boolean)
+			return "Z:" + value;
+		// Timestamps are stored as an instant, as the string representation
+		// of a timestamp depends on the time zone of the JVM
+		if (value instanceof Timestamp)
+			return "i:" + ((Timestamp) value).toInstant();
+		if (value instanceof Date)
+			return "d:" + value;
+		if (value instanceof Time)
+			return "T:" + value;
+		if (value instanceof byte[])
+			return "B:" + Base64.getUrlEncoder().encodeToString((byte[]) value);
+		if (value instanceof UUID)
+			return "U:" + value;
+		if (value instanceof String || value instanceof Character)
+			return "S:" + Base64.getUrlEncoder().encodeToString(value.toString().getBytes(StandardCharsets.UTF_8));
+		// A key that is restored with a different type would select the wrong
+		// records when the copy is resumed
+		throw new IllegalArgumentException("Unsupported key type " + value.getClass().getName());
+	}
+
+	private static Object decodeValue(String value)
+	{
+		String payload = value.substring(2);
+		switch (value.charAt(0))
+		{
+		case 'N':
+			return null;
+		case 'L':
+			return Long.valueOf(payload);
+		case 'D':
+			return new BigDecimal(payload);
+		case 'F':
+			return Double.valueOf(payload);
+		case 'Z':
+			return Boolean.valueOf(payload);
+		case 'i':
+			return Timestamp.from(Instant.parse(payload));
+		case 't':
+			return Timestamp.valueOf(payload);
+		case 'd':
+			return Date.valueOf(payload);
+		case 'T':
+			return Time.valueOf(payload);
+		case 'B':
+			return Base64.getUrlDecoder().decode(payload);
+		case 'U':
+			return UUID.fromString(payload);
+		case 'S':
+			return new String(Base64.getUrlDecoder().decode(payload), StandardCharsets.UTF_8);
+		default:
+			throw new IllegalArgumentException("Unknown value type " + value.charAt(0));
+		}
+	}
+
+}
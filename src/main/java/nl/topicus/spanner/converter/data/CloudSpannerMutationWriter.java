@@ -0,0 +1,189 @@
+package nl.topicus.spanner.converter.data;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.cloud.ByteArray;
+import com.google.cloud.Date;
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.Mutation.WriteBuilder;
+import com.google.cloud.spanner.ValueBinder;
+
+import nl.topicus.jdbc.ICloudSpannerConnection;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.metrics.WorkerMetrics;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+
+/**
+ * Writes records directly as insert mutations, or insert-or-update mutations
+ * in upsert mode, to Cloud Spanner. This skips
+ * generating and parsing an INSERT statement for each record. Mutations are
+ * buffered until {@link #commit()} is called, or until the buffer would
+ * exceed the maximum number of mutations or the batch size in bytes of one
+ * commit.
+ */
+final class CloudSpannerMutationWriter implements DestinationWriter
+{
+	/**
+	 * The maximum number of column mutations in one Cloud Spanner commit
+	 */
+	private static final int MAX_MUTATIONS_PER_COMMIT = 20000;
+
+	private final ConverterConfiguration config;
+
+	private final ConverterUtils converterUtils;
+
+	private final WorkerMetrics metrics;
+
+	private final ICloudSpannerConnection destination;
+
+	private final String destinationTable;
+
+	private final List<String> columns;
+
+	private final List<Integer> columnTypes;
+
+	private final boolean upsert;
+
+	private final List<Mutation> buffer = new ArrayList<>();
+
+	private long bufferedBytes;
+
+	private int bufferedMutations;
+
+	/**
+	 * The time spent creating the buffered mutations
+	 */
+	private long bindNanos;
+
+	CloudSpannerMutationWriter(ConverterConfiguration config, Connection destination, String destinationTable,
+			Columns insertCols, WorkerMetrics metrics, boolean upsert) throws SQLException
+	{
+		if (!destination.isWrapperFor(ICloudSpannerConnection.class))
+		{
+			throw new IllegalArgumentException("The given destination connection is not a ICloudSpannerConnection");
+		}
+		this.config = config;
+		this.converterUtils = new ConverterUtils(config);
+		this.metrics = metrics;
+		this.destination = destination.unwrap(ICloudSpannerConnection.class);
+		this.destinationTable = destinationTable;
+		this.columns = insertCols.getColumns();
+		this.columnTypes = insertCols.getColumnTypes();
+		this.upsert = upsert;
+	}
+
+	@Override
+	public long write(Object[] row) throws SQLException
+	{
+		long startTime = System.nanoTime();
+		WriteBuilder builder = upsert ? Mutation.newInsertOrUpdateBuilder(destinationTable)
+				: Mutation.newInsertBuilder(destinationTable);
+		long size = 0;
+		for (int index = 0; index < row.length; index++)
+		{
+			int type = columnTypes.get(index);
+			set(builder.set(columns.get(index)), type, row[index]);
+			size += converterUtils.getActualDataSize(type, row[index]);
+		}
+		Mutation mutation = builder.build();
+		long nanos = System.nanoTime() - startTime;
+		if (!buffer.isEmpty() && (bufferedMutations + row.length > MAX_MUTATIONS_PER_COMMIT
+				|| bufferedBytes + size > config.getBatchSize()))
+		{
+			commit();
+		}
+		buffer.add(mutation);
+		bufferedMutations += row.length;
+		bufferedBytes += size;
+		bindNanos += nanos;
+		return size;
+	}
+
+	@Override
+	public void commit() throws SQLException
+	{
+		if (!buffer.isEmpty())
+		{
+			destination.getTransaction().buffer(buffer);
+			buffer.clear();
+			bufferedMutations = 0;
+			bufferedBytes = 0;
+			metrics.bound(bindNanos);
+			bindNanos = 0L;
+		}
+		destination.commit();
+	}
+
+	@Override
+	public void close()
+	{
+		buffer.clear();
+	}
+
+	private void set(ValueBinder<WriteBuilder> binder, int type, Object value)
+	{
+		switch (type)
+		{
+		case Types.BOOLEAN:
+		case Types.BIT:
+			binder.to((Boolean) value);
+			break;
+		case Types.BIGINT:
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			binder.to(value == null ? null : ((Number) value).longValue());
+			break;
+		case Types.FLOAT:
+		case Types.REAL:
+		case Types.DOUBLE:
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			binder.to(value == null ? null : ((Number) value).doubleValue());
+			break;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			binder.to(value == null ? null : ByteArray.copyFrom((byte[]) value));
+			break;
+		case Types.DATE:
+			binder.to(value == null ? null : toDate((java.util.Date) value));
+			break;
+		case Types.TIME:
+		case Types.TIMESTAMP:
+			binder.to(value == null ? null : toTimestamp((java.util.Date) value));
+			break;
+		default:
+			binder.to(value == null ? null : toString(value));
+			break;
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private Date toDate(java.util.Date date)
+	{
+		return Date.fromYearMonthDay(date.getYear() + 1900, date.getMonth() + 1, date.getDate());
+	}
+
+	private Timestamp toTimestamp(java.util.Date date)
+	{
+		if (date instanceof java.sql.Timestamp)
+			return Timestamp.of((java.sql.Timestamp) date);
+		return Timestamp.of(new java.sql.Timestamp(date.getTime()));
+	}
+
+	private String toString(Object value)
+	{
+		if (value instanceof BigDecimal)
+			return ((BigDecimal) value).toPlainString();
+		return value.toString();
+	}
+
+}
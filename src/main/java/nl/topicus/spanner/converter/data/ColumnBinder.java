@@ -0,0 +1,454 @@
+package nl.topicus.spanner.converter.data;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+import nl.topicus.spanner.converter.util.DataSize;
+
+/**
+ * Copies the value of one column from a source result set to a parameter of a
+ * destination statement using the getter and setter for the type of the
+ * column, instead of {@link ResultSet#getObject(int)} and
+ * {@link PreparedStatement#setObject(int, Object, int)}. Binders for numeric
+ * and boolean columns do not box their values. Each binder remembers the last
+ * value it copied, so the key of the last copied record can be determined
+ * without keeping the values of each record. The values of primary key columns
+ * are always copied with {@link ResultSet#getObject(int)}, as the last key is
+ * bound to the next query on the source and written to the checkpoint journal,
+ * and must therefore keep the type of the source column (e.g. a PostgreSQL
+ * uuid that is copied to a STRING column).
+ *
+ * A binder belongs to one destination statement and may only be used by one
+ * thread.
+ */
+abstract class ColumnBinder
+{
+	protected final int sqlType;
+
+	protected final DatabaseType destination;
+
+	/**
+	 * The size of each non-null value, or -1 if the size depends on the value
+	 */
+	protected final int fixedSize;
+
+	protected boolean isNull;
+
+	private ColumnBinder(int sqlType, DatabaseType destination)
+	{
+		this.sqlType = sqlType;
+		this.destination = destination;
+		this.fixedSize = DataSize.fixedSizeOf(destination, sqlType);
+	}
+
+	/**
+	 * Creates a binder for each column
+	 *
+	 * @param columnTypes
+	 *            The types of the columns in the destination
+	 * @param keyColumns
+	 *            The columns that are part of the primary key
+	 * @param destination
+	 *            The type of the destination database
+	 */
+	static ColumnBinder[] create(List<Integer> columnTypes, boolean[] keyColumns, DatabaseType destination)
+	{
+		ColumnBinder[] res = new ColumnBinder[columnTypes.size()];
+		for (int index = 0; index < res.length; index++)
+		{
+			if (keyColumns[index])
+				res[index] = new ObjectBinder(columnTypes.get(index), destination);
+			else
+				res[index] = create(columnTypes.get(index), destination);
+		}
+		return res;
+	}
+
+	private static ColumnBinder create(int sqlType, DatabaseType destination)
+	{
+		switch (sqlType)
+		{
+		case Types.BIGINT:
+			return new LongBinder(sqlType, destination);
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return new IntBinder(sqlType, destination);
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return new DoubleBinder(sqlType, destination);
+		case Types.REAL:
+			return new FloatBinder(sqlType, destination);
+		case Types.BOOLEAN:
+		case Types.BIT:
+			return new BooleanBinder(sqlType, destination);
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return new BigDecimalBinder(sqlType, destination);
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.LONGNVARCHAR:
+			return new StringBinder(sqlType, destination);
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+			return new BytesBinder(sqlType, destination);
+		case Types.DATE:
+			return new DateBinder(sqlType, destination);
+		case Types.TIME:
+			return new TimeBinder(sqlType, destination);
+		case Types.TIMESTAMP:
+			return new TimestampBinder(sqlType, destination);
+		default:
+			return new ObjectBinder(sqlType, destination);
+		}
+	}
+
+	/**
+	 * Reads the value at the given index of the current record of the result
+	 * set and sets it as the parameter with the same index of the statement
+	 *
+	 * @return The size of the value in bytes
+	 */
+	abstract int bind(ResultSet rs, PreparedStatement statement, int index) throws SQLException;
+
+	/**
+	 * @return The last value that was copied by this binder
+	 */
+	abstract Object getLastValue();
+
+	/**
+	 * Sets the parameter to null if the last value read was null
+	 *
+	 * @return true if the value was null
+	 */
+	protected boolean bindNull(ResultSet rs, PreparedStatement statement, int index) throws SQLException
+	{
+		isNull = rs.wasNull();
+		if (isNull)
+			statement.setNull(index, sqlType);
+		return isNull;
+	}
+
+	private static final class LongBinder extends ColumnBinder
+	{
+		private long value;
+
+		private LongBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		int bind(ResultSet rs, PreparedStatement statement, int index) throws SQLException
+		{
+			value = rs.getLong(index);
+			if (bindNull(rs, statement, index))
+				return 0;
+			statement.setLong(index, value);
+			return fixedSize;
+		}
+
+		@Override
+		Object getLastValue()
+		{
+			return isNull ? null : Long.valueOf(value);
+		}
+	}
+
+	private static final class IntBinder extends ColumnBinder
+	{
+		private int value;
+
+		private IntBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		int bind(ResultSet rs, PreparedStatement statement, int index) throws SQLException
+		{
+			value = rs.getInt(index);
+			if (bindNull(rs, statement, index))
+				return 0;
+			statement.setInt(index, value);
+			return fixedSize;
+		}
+
+		@Override
+		Object getLastValue()
+		{
+			return isNull ? null : Integer.valueOf(value);
+		}
+	}
+
+	private static final class DoubleBinder extends ColumnBinder
+	{
+		private double value;
+
+		private DoubleBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		int bind(ResultSet rs, PreparedStatement statement, int index) throws SQLException
+		{
+			value = rs.getDouble(index);
+			if (bindNull(rs, statement, index))
+				return 0;
+			statement.setDouble(index, value);
+			return fixedSize;
+		}
+
+		@Override
+		Object getLastValue()
+		{
+			return isNull ? null : Double.valueOf(value);
+		}
+	}
+
+	private static final class FloatBinder extends ColumnBinder
+	{
+		private float value;
+
+		private FloatBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		int bind(ResultSet rs, PreparedStatement statement, int index) throws SQLException
+		{
+			value = rs.getFloat(index);
+			if (bindNull(rs, statement, index))
+				return 0;
+			statement.setFloat(index, value);
+			return fixedSize;
+		}
+
+		@Override
+		Object getLastValue()
+		{
+			return isNull ? null : Float.valueOf(value);
+		}
+	}
+
+	private static final class BooleanBinder extends ColumnBinder
+	{
+		private boolean value;
+
+		private BooleanBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		int bind(ResultSet rs, PreparedStatement statement, int index) throws SQLException
+		{
+			value = rs.getBoolean(index);
+			if (bindNull(rs, statement, index))
+				return 0;
+			statement.setBoolean(index, value);
+			return fixedSize;
+		}
+
+		@Override
+		Object getLastValue()
+		{
+			return isNull ? null : Boolean.valueOf(value);
+		}
+	}
+
+	/**
+	 * Base class for binders of values that are objects in JDBC
+	 */
+	private abstract static class ReferenceBinder<T> extends ColumnBinder
+	{
+		private T value;
+
+		private ReferenceBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		abstract T get(ResultSet rs, int index) throws SQLException;
+
+		abstract void set(PreparedStatement statement, int index, T value) throws SQLException;
+
+		@Override
+		int bind(ResultSet rs, PreparedStatement statement, int index) throws SQLException
+		{
+			value = get(rs, index);
+			isNull = value == null;
+			if (isNull)
+			{
+				statement.setNull(index, sqlType);
+				return 0;
+			}
+			set(statement, index, value);
+			return fixedSize >= 0 ? fixedSize : DataSize.sizeOf(destination, sqlType, value);
+		}
+
+		@Override
+		Object getLastValue()
+		{
+			return value;
+		}
+	}
+
+	private static final class BigDecimalBinder extends ReferenceBinder<BigDecimal>
+	{
+		private BigDecimalBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		BigDecimal get(ResultSet rs, int index) throws SQLException
+		{
+			return rs.getBigDecimal(index);
+		}
+
+		@Override
+		void set(PreparedStatement statement, int index, BigDecimal value) throws SQLException
+		{
+			statement.setBigDecimal(index, value);
+		}
+	}
+
+	private static final class StringBinder extends ReferenceBinder<String>
+	{
+		private StringBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		String get(ResultSet rs, int index) throws SQLException
+		{
+			return rs.getString(index);
+		}
+
+		@Override
+		void set(PreparedStatement statement, int index, String value) throws SQLException
+		{
+			statement.setString(index, value);
+		}
+	}
+
+	private static final class BytesBinder extends ReferenceBinder<byte[]>
+	{
+		private BytesBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		byte[] get(ResultSet rs, int index) throws SQLException
+		{
+			return rs.getBytes(index);
+		}
+
+		@Override
+		void set(PreparedStatement statement, int index, byte[] value) throws SQLException
+		{
+			statement.setBytes(index, value);
+		}
+	}
+
+	private static final class DateBinder extends ReferenceBinder<Date>
+	{
+		private DateBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		Date get(ResultSet rs, int index) throws SQLException
+		{
+			return rs.getDate(index);
+		}
+
+		@Override
+		void set(PreparedStatement statement, int index, Date value) throws SQLException
+		{
+			statement.setDate(index, value);
+		}
+	}
+
+	private static final class TimeBinder extends ReferenceBinder<Time>
+	{
+		private TimeBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		Time get(ResultSet rs, int index) throws SQLException
+		{
+			return rs.getTime(index);
+		}
+
+		@Override
+		void set(PreparedStatement statement, int index, Time value) throws SQLException
+		{
+			statement.setTime(index, value);
+		}
+	}
+
+	private static final class TimestampBinder extends ReferenceBinder<Timestamp>
+	{
+		private TimestampBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		Timestamp get(ResultSet rs, int index) throws SQLException
+		{
+			return rs.getTimestamp(index);
+		}
+
+		@Override
+		void set(PreparedStatement statement, int index, Timestamp value) throws SQLException
+		{
+			statement.setTimestamp(index, value);
+		}
+	}
+
+	/**
+	 * Binder for all other types, which copies values the same way as records
+	 * that are written as arrays of objects
+	 */
+	private static final class ObjectBinder extends ReferenceBinder<Object>
+	{
+		private ObjectBinder(int sqlType, DatabaseType destination)
+		{
+			super(sqlType, destination);
+		}
+
+		@Override
+		Object get(ResultSet rs, int index) throws SQLException
+		{
+			return rs.getObject(index);
+		}
+
+		@Override
+		void set(PreparedStatement statement, int index, Object value) throws SQLException
+		{
+			statement.setObject(index, value, sqlType);
+		}
+	}
+
+}
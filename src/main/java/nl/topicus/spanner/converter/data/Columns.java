@@ -1,94 +1,133 @@
-package nl.topicus.spanner.converter.data;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
-public final class Columns
-{
-	private List<String> columns = new ArrayList<>();
-
-	private List<Integer> columnTypes = new ArrayList<>();
-
-	private List<String> primaryKeyCols = new ArrayList<>();
-
-	public void addColumn(String name)
-	{
-		columns.add(name);
-	}
-
-	public void addColumnType(Integer type)
-	{
-		columnTypes.add(type);
-	}
-
-	public void addPrimaryKeyColumn(String name)
-	{
-		primaryKeyCols.add(name);
-	}
-
-	public String getColumnNames()
-	{
-		return String.join(", ", columns);
-	}
-
-	public String getPrimaryKeyColumns()
-	{
-		return String.join(", ", primaryKeyCols);
-	}
-
-	public String getPrimaryKeyColumnsWhereClause(String prefix)
-	{
-		List<String> res = new ArrayList<>(primaryKeyCols.size() * 2);
-		for (String s : primaryKeyCols)
-		{
-			res.add(prefix + s + ">=?");
-		}
-		for (String s : primaryKeyCols)
-		{
-			res.add(prefix + s + "<=?");
-		}
-		return String.join(" AND ", res);
-	}
-
-	public String getPrimaryKeyColumns(String prefix)
-	{
-		List<String> res = new ArrayList<>(primaryKeyCols.size());
-		for (String pk : primaryKeyCols)
-			res.add(prefix + pk);
-		return String.join(", ", res);
-	}
-
-	public String getColumnParameters()
-	{
-		String[] params = new String[columns.size()];
-		Arrays.fill(params, "?");
-		return String.join(", ", params);
-	}
-
-	public int getColumnIndex(String columnName)
-	{
-		return columns.indexOf(columnName);
-	}
-
-	public Integer getColumnType(String columnName)
-	{
-		int index = getColumnIndex(columnName);
-		return index == -1 ? null : columnTypes.get(index);
-	}
-
-	public List<Integer> getColumnTypes()
-	{
-		return columnTypes;
-	}
-
-	public List<String> getPrimaryKeyCols()
-	{
-		return primaryKeyCols;
-	}
-
-	public List<String> getColumns()
-	{
-		return columns;
-	}
+package nl.topicus.spanner.converter.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class Columns
+{
+	private List<String> columns = new ArrayList<>();
+
+	private List<Integer> columnTypes = new ArrayList<>();
+
+	private List<String> primaryKeyCols = new ArrayList<>();
+
+	public void addColumn(String name)
+	{
+		columns.add(name);
+	}
+
+	public void addColumnType(Integer type)
+	{
+		columnTypes.add(type);
+	}
+
+	public void addPrimaryKeyColumn(String name)
+	{
+		primaryKeyCols.add(name);
+	}
+
+	public String getColumnNames()
+	{
+		return String.join(", ", columns);
+	}
+
+	public String getPrimaryKeyColumns()
+	{
+		return String.join(", ", primaryKeyCols);
+	}
+
+	public String getPrimaryKeyColumnsWhereClause(String prefix)
+	{
+		List<String> res = new ArrayList<>(primaryKeyCols.size() * 2);
+		for (String s : primaryKeyCols)
+		{
+			res.add(prefix + s + ">=?");
+		}
+		for (String s : primaryKeyCols)
+		{
+			res.add(prefix + s + "<=?");
+		}
+		return String.join(" AND ", res);
+	}
+
+	/**
+	 * Creates a comparison between the primary key of a row and a key value,
+	 * for example <code>(ID1, ID2) &gt; (?, ?)</code>. If the database does not
+	 * support row value comparisons, the equivalent expanded form
+	 * <code>(ID1 &gt; ? OR (ID1 = ? AND ID2 &gt; ?))</code> is returned.
+	 * 
+	 * @param prefix
+	 *            The prefix to add to each column name
+	 * @param operator
+	 *            One of &lt;, &lt;=, &gt; or &gt;=
+	 * @param rowValue
+	 *            Whether to use a row value comparison or the expanded form
+	 * @return The comparison. The parameters are bound by
+	 *         {@link KeyRange#bind}
+	 */
+	public String getPrimaryKeyComparison(String prefix, String operator, boolean rowValue)
+	{
+		if (rowValue)
+		{
+			String[] params = new String[primaryKeyCols.size()];
+			Arrays.fill(params, "?");
+			return "(" + getPrimaryKeyColumns(prefix) + ") " + operator + " (" + String.join(", ", params) + ")";
+		}
+		String strictOperator = operator.substring(0, 1);
+		List<String> res = new ArrayList<>(primaryKeyCols.size());
+		for (int i = 0; i < primaryKeyCols.size(); i++)
+		{
+			StringBuilder term = new StringBuilder("(");
+			for (int j = 0; j < i; j++)
+			{
+				term.append(prefix).append(primaryKeyCols.get(j)).append(" = ? AND ");
+			}
+			term.append(prefix).append(primaryKeyCols.get(i)).append(" ")
+					.append(i == primaryKeyCols.size() - 1 ? operator : strictOperator).append(" ?)");
+			res.add(term.toString());
+		}
+		return "(" + String.join(" OR ", res) + ")";
+	}
+
+	public String getPrimaryKeyColumns(String prefix)
+	{
+		List<String> res = new ArrayList<>(primaryKeyCols.size());
+		for (String pk : primaryKeyCols)
+			res.add(prefix + pk);
+		return String.join(", ", res);
+	}
+
+	public String getColumnParameters()
+	{
+		String[] params = new String[columns.size()];
+		Arrays.fill(params, "?");
+		return String.join(", ", params);
+	}
+
+	public int getColumnIndex(String columnName)
+	{
+		return columns.indexOf(columnName);
+	}
+
+	public Integer getColumnType(String columnName)
+	{
+		int index = getColumnIndex(columnName);
+		return index == -1 ? null : columnTypes.get(index);
+	}
+
+	public List<Integer> getColumnTypes()
+	{
+		return columnTypes;
+	}
+
+	public List<String> getPrimaryKeyCols()
+	{
+		return primaryKeyCols;
+	}
+
+	public List<String> getColumns()
+	{
+		return columns;
+	}
 }
\ No newline at end of file
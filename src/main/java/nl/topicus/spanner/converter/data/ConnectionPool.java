@@ -0,0 +1,299 @@
+package nl.topicus.spanner.converter.data;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import nl.topicus.jdbc.ICloudSpannerConnection;
+
+/**
+ * Bounded pool of connections to one database URL that is shared by all
+ * workers. Closing a connection that was taken from the pool returns it to the
+ * pool, so workers can keep using try-with-resources. A returned connection
+ * that has an open transaction is rolled back, and its auto commit and read
+ * only settings are reset. Connections that cannot be reset, including Cloud
+ * Spanner connections in batch read only mode, are closed instead.
+ *
+ * The pool keeps track of the time workers wait for a connection, which is
+ * logged when the pool is closed.
+ */
+final class ConnectionPool implements Closeable
+{
+	private static final Logger log = Logger.getLogger(ConnectionPool.class.getName());
+
+	private final String name;
+
+	private final String url;
+
+	private final int maxSize;
+
+	private final long maxWaitInMillis;
+
+	/**
+	 * One permit for each connection that may be handed out
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Connections that have been returned to the pool. The last returned
+	 * connection is handed out first.
+	 */
+	private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+	private final AtomicInteger openConnections = new AtomicInteger();
+
+	private final AtomicLong acquired = new AtomicLong();
+
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	private volatile boolean closed;
+
+	ConnectionPool(String name, String url, int maxSize, long maxWaitInMillis)
+	{
+		this.name = name;
+		this.url = url;
+		this.maxSize = maxSize;
+		this.maxWaitInMillis = maxWaitInMillis;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Takes a connection from the pool, or opens a new connection if no idle
+	 * connection is available. Waits if the maximum number of connections has
+	 * been handed out.
+	 */
+	Connection getConnection() throws SQLException
+	{
+		if (closed)
+			throw new SQLException("Connection pool " + name + " has been closed");
+		long start = System.nanoTime();
+		try
+		{
+			if (!permits.tryAcquire(maxWaitInMillis, TimeUnit.MILLISECONDS))
+				throw new SQLException("Timeout while waiting for a connection from pool " + name);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection from pool " + name, e);
+		}
+		recordWait(System.nanoTime() - start);
+		try
+		{
+			Connection connection = idle.pollFirst();
+			if (connection == null)
+				connection = open();
+			return wrap(connection);
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Queues tasks on the given executor that open connections until the pool
+	 * contains the given number of connections. The tasks run on the threads
+	 * of the executor before the workers that are submitted after them, so
+	 * these workers do not have to wait for a new connection.
+	 */
+	void prewarm(int numberOfConnections, Executor executor)
+	{
+		int target = Math.min(numberOfConnections, maxSize);
+		for (int i = openConnections.get(); i < target; i++)
+		{
+			executor.execute(this::prewarmConnection);
+		}
+	}
+
+	private void prewarmConnection()
+	{
+		if (closed || !permits.tryAcquire())
+			return;
+		try
+		{
+			idle.offerLast(open());
+		}
+		catch (SQLException e)
+		{
+			log.warning("Could not open connection for pool " + name + ": " + e.getMessage());
+		}
+		finally
+		{
+			permits.release();
+		}
+	}
+
+	long getTotalWaitInMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+	}
+
+	long getMaxWaitInMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	/**
+	 * Closes all idle connections. Connections that are still in use are
+	 * closed when they are returned to the pool.
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+		Connection connection;
+		while ((connection = idle.pollFirst()) != null)
+		{
+			closePhysically(connection);
+		}
+		log.info("Connection pool " + name + ": " + acquired.get() + " connections handed out, total wait "
+				+ getTotalWaitInMillis() + " ms, max wait " + getMaxWaitInMillis() + " ms, maximum size " + maxSize);
+	}
+
+	private Connection open() throws SQLException
+	{
+		Connection connection = DriverManager.getConnection(url);
+		openConnections.incrementAndGet();
+		return connection;
+	}
+
+	private void recordWait(long nanos)
+	{
+		acquired.incrementAndGet();
+		totalWaitNanos.addAndGet(nanos);
+		maxWaitNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	private void release(Connection connection)
+	{
+		try
+		{
+			if (!closed && reset(connection))
+				idle.offerFirst(connection);
+			else
+				closePhysically(connection);
+		}
+		finally
+		{
+			permits.release();
+		}
+	}
+
+	/**
+	 * Resets the state of a connection that is returned to the pool
+	 *
+	 * @return true if the connection can be reused
+	 */
+	private boolean reset(Connection connection)
+	{
+		try
+		{
+			if (connection.isClosed())
+			{
+				openConnections.decrementAndGet();
+				return false;
+			}
+			if (connection.isWrapperFor(ICloudSpannerConnection.class)
+					&& connection.unwrap(ICloudSpannerConnection.class).isBatchReadOnly())
+				return false;
+			if (!connection.getAutoCommit())
+			{
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			if (connection.isReadOnly())
+				connection.setReadOnly(false);
+			return true;
+		}
+		catch (SQLException e)
+		{
+			return false;
+		}
+	}
+
+	private void closePhysically(Connection connection)
+	{
+		try
+		{
+			if (!connection.isClosed())
+			{
+				connection.close();
+				openConnections.decrementAndGet();
+			}
+		}
+		catch (SQLException e)
+		{
+			log.fine("Could not close connection of pool " + name + ": " + e.getMessage());
+		}
+	}
+
+	private Connection wrap(Connection connection)
+	{
+		return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new PooledConnection(connection));
+	}
+
+	/**
+	 * Hands out a pooled connection to a worker. All calls are delegated to
+	 * the actual connection, except close, which returns the connection to
+	 * the pool.
+	 */
+	private final class PooledConnection implements InvocationHandler
+	{
+		private final Connection connection;
+
+		private boolean returned;
+
+		private PooledConnection(Connection connection)
+		{
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			switch (method.getName())
+			{
+			case "close":
+				if (!returned)
+				{
+					returned = true;
+					release(connection);
+				}
+				return null;
+			case "isClosed":
+				if (returned)
+					return Boolean.TRUE;
+				break;
+			default:
+				if (returned && method.getDeclaringClass() != Object.class)
+					throw new SQLException("Connection has been returned to pool " + name);
+			}
+			try
+			{
+				return method.invoke(connection, args);
+			}
+			catch (InvocationTargetException e)
+			{
+				throw e.getCause();
+			}
+		}
+	}
+
+}
@@ -1,192 +1,533 @@
-package nl.topicus.spanner.converter.data;
-
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.logging.Logger;
-
-import nl.topicus.jdbc.ICloudSpannerConnection;
-import nl.topicus.spanner.converter.ConvertMode;
-import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
-import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
-
-public class DataCopier
-{
-	private static final Logger log = Logger.getLogger(DataCopier.class.getName());
-
-	public static final String SELECT_FORMAT = "SELECT $COLUMNS FROM $TABLE ORDER BY $PRIMARY_KEY LIMIT $BATCH_SIZE OFFSET $OFFSET";
-	public static final String CLOUD_SPANNER_SELECT_FORMAT = "SELECT $COLUMNS FROM $TABLE";
-
-	private final ConverterConfiguration config;
-
-	private List<String> tables = new ArrayList<>();
-
-	private List<TableDeleter> deleters = new ArrayList<>();
-
-	private List<TablePreparer> deletePreparers = new ArrayList<>();
-
-	private List<AbstractTableWorker> copiers = new ArrayList<>();
-
-	private List<TablePreparer> copyPreparers = new ArrayList<>();
-
-	public DataCopier(ConverterConfiguration config)
-	{
-		this.config = config;
-	}
-
-	public void convert() throws SQLException
-	{
-		init();
-		deleteData();
-		copyData();
-	}
-
-	private void init() throws SQLException
-	{
-		initTables();
-	}
-
-	private void deleteData() throws SQLException
-	{
-		if (config.getDataConvertMode() == ConvertMode.DropAndRecreate)
-		{
-			try (Connection source = DriverManager.getConnection(config.getUrlSource());
-					Connection destination = DriverManager.getConnection(config.getUrlDestination()))
-			{
-				createTableDeleters(source, destination);
-				ConversionResult prepare = runWorkers(deletePreparers);
-				log.info("Preparing delete finished with result: " + prepare.toString());
-				ConversionResult run = runWorkers(deleters);
-				log.info("Running delete finished with result: " + run.toString());
-			}
-		}
-	}
-
-	private void copyData() throws SQLException
-	{
-		try (Connection source = DriverManager.getConnection(config.getUrlSource());
-				Connection destination = DriverManager.getConnection(config.getUrlDestination()))
-		{
-			prepareSourceConnection(source);
-			createTableWorkers(source, destination);
-			ConversionResult prepare = runWorkers(copyPreparers);
-			log.info("Preparing copy finished with result: " + prepare.toString());
-			ConversionResult run = runWorkers(copiers);
-			log.info("Running copy finished with result: " + run.toString());
-		}
-	}
-
-	private void prepareSourceConnection(Connection source) throws SQLException
-	{
-		if (source.isWrapperFor(ICloudSpannerConnection.class))
-		{
-			ICloudSpannerConnection con = source.unwrap(ICloudSpannerConnection.class);
-			// Make sure no transaction is running
-			if (!con.isBatchReadOnly())
-			{
-				if (con.getAutoCommit())
-				{
-					con.setAutoCommit(false);
-				}
-				else
-				{
-					con.commit();
-				}
-				con.setBatchReadOnly(true);
-			}
-		}
-	}
-
-	private void initTables() throws SQLException
-	{
-		try (Connection destination = DriverManager.getConnection(config.getUrlDestination()))
-		{
-			try (ResultSet rs = destination.getMetaData().getTables(config.getCatalog(), config.getSchema(), null,
-					new String[] { "TABLE" }))
-			{
-				while (rs.next())
-				{
-					String tableSchema = rs.getString("TABLE_SCHEM");
-					if (!config.getDestinationDatabaseType().isSystemSchema(tableSchema)
-							&& tableExistsInSource(rs.getString("TABLE_NAME")))
-					{
-						tables.add(rs.getString("TABLE_NAME"));
-					}
-				}
-			}
-		}
-	}
-
-	private boolean tableExistsInSource(String table) throws SQLException
-	{
-		try (Connection source = DriverManager.getConnection(config.getUrlSource()))
-		{
-			try (ResultSet rs = source.getMetaData().getTables(config.getCatalog(), config.getSchema(), table,
-					new String[] { "TABLE" }))
-			{
-				return rs.next();
-			}
-		}
-	}
-
-	private void createTableDeleters(Connection source, Connection destination) throws SQLException
-	{
-		for (String table : tables)
-		{
-			TableDeleter worker = new TableDeleter(table, config);
-			deleters.add(worker);
-			deletePreparers.add(new TablePreparer(worker, source, destination));
-		}
-	}
-
-	private void createTableWorkers(Connection source, Connection destination) throws SQLException
-	{
-		for (String table : tables)
-		{
-			AbstractTableWorker worker = createTableWorker(table, config);
-			copiers.add(worker);
-			copyPreparers.add(new TablePreparer(worker, source, destination));
-		}
-	}
-
-	private AbstractTableWorker createTableWorker(String table, ConverterConfiguration config)
-	{
-		if (config.getSourceDatabaseType() == DatabaseType.CloudSpanner)
-			return new CloudSpannerTableWorker(table, config);
-		return new GenericJdbcTableWorker(table, config);
-	}
-
-	private ConversionResult runWorkers(List<? extends Callable<ConversionResult>> callables)
-	{
-		Exception exception = null;
-		ExecutorService service = Executors.newFixedThreadPool(config.getNumberOfTableWorkers());
-		List<Future<ConversionResult>> futures = new ArrayList<>(callables.size());
-		long startTime = System.currentTimeMillis();
-		for (Callable<ConversionResult> callable : callables)
-		{
-			futures.add(service.submit(callable));
-		}
-		service.shutdown();
-		try
-		{
-			service.awaitTermination(config.getTableWorkerMaxWaitInMinutes(), TimeUnit.MINUTES);
-		}
-		catch (InterruptedException e)
-		{
-			exception = e;
-			service.shutdownNow();
-			log.severe("Error while waiting for workers to finish: " + e.getMessage());
-		}
-		long endTime = System.currentTimeMillis();
-		return ConversionResult.collect(futures, startTime, endTime, exception);
-	}
-
-}
+package nl.topicus.spanner.converter.data;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import nl.topicus.jdbc.ICloudSpannerConnection;
+import nl.topicus.spanner.converter.ConvertMode;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+import nl.topicus.spanner.converter.ddl.DdlBatch;
+import nl.topicus.spanner.converter.metrics.ConverterMetrics;
+import nl.topicus.spanner.converter.metrics.TableMetrics;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+import nl.topicus.spanner.converter.util.SchemaCatalog;
+import nl.topicus.spanner.converter.util.TableHierarchy;
+
+public class DataCopier
+{
+	private static final Logger log = Logger.getLogger(DataCopier.class.getName());
+
+	public static final String SELECT_FORMAT = "SELECT $COLUMNS FROM $TABLE ORDER BY $PRIMARY_KEY LIMIT $BATCH_SIZE OFFSET $OFFSET";
+	public static final String KEYSET_SELECT_FORMAT = "SELECT $COLUMNS FROM $TABLE WHERE $WHERE_CLAUSE ORDER BY $PRIMARY_KEY LIMIT $BATCH_SIZE";
+	public static final String STREAMING_SELECT_FORMAT = "SELECT $COLUMNS FROM $TABLE WHERE $WHERE_CLAUSE ORDER BY $PRIMARY_KEY";
+	public static final String KEY_AT_OFFSET_FORMAT = "SELECT $PRIMARY_KEY FROM $TABLE ORDER BY $PRIMARY_KEY LIMIT 1 OFFSET $OFFSET";
+	public static final String CLOUD_SPANNER_SELECT_FORMAT = "SELECT $COLUMNS FROM $TABLE";
+
+	private final ConverterConfiguration config;
+
+	private List<String> tables = new ArrayList<>();
+
+	private List<TableDeleter> deleters = new ArrayList<>();
+
+	private List<TablePreparer> deletePreparers = new ArrayList<>();
+
+	private List<AbstractTableWorker> copiers = new ArrayList<>();
+
+	private List<TablePreparer> copyPreparers = new ArrayList<>();
+
+	/**
+	 * Snapshot of the tables in the source database. Loaded by the data copier
+	 * if none was given.
+	 */
+	private SchemaCatalog sourceCatalog;
+
+	/**
+	 * Snapshot of the tables in the destination database that is used by all
+	 * table workers
+	 */
+	private SchemaCatalog destinationCatalog;
+
+	/**
+	 * The parents of the tables that are interleaved in the destination.
+	 * Parent tables are copied before and deleted after their children.
+	 */
+	private TableHierarchy hierarchy;
+
+	/**
+	 * Records the progress of the data copy if a checkpoint file has been
+	 * configured
+	 */
+	private CheckpointJournal journal;
+
+	/**
+	 * The watermarks of the tables if the data convert mode is Incremental
+	 */
+	private WatermarkStore watermarks;
+
+	/**
+	 * The connections to the source database that are shared by all workers
+	 */
+	private ConnectionPool sourcePool;
+
+	/**
+	 * The connections to the destination database that are shared by all
+	 * workers
+	 */
+	private ConnectionPool destinationPool;
+
+	/**
+	 * The metrics of all table workers
+	 */
+	private ConverterMetrics metrics;
+
+	public DataCopier(ConverterConfiguration config)
+	{
+		this(config, null);
+	}
+
+	/**
+	 * @param sourceCatalog
+	 *            A snapshot of the source database, or <code>null</code> if
+	 *            the data copier should load it
+	 */
+	public DataCopier(ConverterConfiguration config, SchemaCatalog sourceCatalog)
+	{
+		this.config = config;
+		this.sourceCatalog = sourceCatalog;
+	}
+
+	public void convert() throws SQLException
+	{
+		try
+		{
+			init();
+			deleteData();
+			copyData();
+		}
+		finally
+		{
+			closeJournal();
+			closePools();
+			closeMetrics();
+		}
+	}
+
+	private void init() throws SQLException
+	{
+		initPools();
+		initMetrics();
+		initTables();
+		initJournal();
+		initWatermarks();
+	}
+
+	private void initPools()
+	{
+		// Workers that hold a connection while they wait for the next one
+		// would wait for each other forever if the pools are too small
+		if (config.getMaxSourceConnections() < config.getMinSourceConnections())
+			throw new IllegalArgumentException("maxSourceConnections must be at least "
+					+ config.getMinSourceConnections() + " for " + config.getMaxConcurrentPartWorkers()
+					+ " concurrent workers");
+		if (config.getMaxDestinationConnections() < config.getMinDestinationConnections())
+			throw new IllegalArgumentException("maxDestinationConnections must be at least "
+					+ config.getMinDestinationConnections() + " for " + config.getMaxConcurrentPartWorkers()
+					+ " concurrent workers");
+		long maxWaitInMillis = TimeUnit.MINUTES.toMillis(config.getTableWorkerMaxWaitInMinutes());
+		sourcePool = new ConnectionPool("source", config.getUrlSource(), config.getMaxSourceConnections(),
+				maxWaitInMillis);
+		destinationPool = new ConnectionPool("destination", config.getUrlDestination(),
+				config.getMaxDestinationConnections(), maxWaitInMillis);
+	}
+
+	private void closePools()
+	{
+		if (sourcePool != null)
+			sourcePool.close();
+		if (destinationPool != null)
+			destinationPool.close();
+	}
+
+	private void initMetrics()
+	{
+		metrics = new ConverterMetrics(config);
+		metrics.start();
+	}
+
+	private void closeMetrics()
+	{
+		if (metrics != null)
+			metrics.close();
+	}
+
+	private void initJournal()
+	{
+		if (config.getCheckpointFile() != null)
+		{
+			try
+			{
+				journal = new CheckpointJournal(config.getCheckpointFile(), config.isResume());
+			}
+			catch (IOException e)
+			{
+				throw new IllegalArgumentException(
+						"Unable to open checkpoint file " + config.getCheckpointFile() + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private void initWatermarks()
+	{
+		if (config.getDataConvertMode() == ConvertMode.Incremental)
+		{
+			try
+			{
+				watermarks = new WatermarkStore(config.getWatermarkFile(), config.getSourceDatabaseType());
+			}
+			catch (IOException e)
+			{
+				throw new IllegalArgumentException(
+						"Unable to read watermark file " + config.getWatermarkFile() + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private void closeJournal()
+	{
+		if (journal != null)
+		{
+			try
+			{
+				journal.close();
+			}
+			catch (IOException e)
+			{
+				log.warning("Unable to close checkpoint file: " + e.getMessage());
+			}
+		}
+	}
+
+	private void deleteData() throws SQLException
+	{
+		if (config.getDataConvertMode() == ConvertMode.DropAndRecreate)
+		{
+			try (Connection source = sourcePool.getConnection();
+					Connection destination = destinationPool.getConnection())
+			{
+				createTableDeleters(source, destination);
+				ConversionResult prepare = runWorkers(deletePreparers);
+				log.info("Preparing delete finished with result: " + prepare.toString());
+				truncateTables(source, destination);
+				recreateTables(source, destination);
+				// The delete workers get their own metrics, so deleted records
+				// are not counted as copied records
+				ConversionResult run = runTableWorkersByDepth(deleters, false, true, TableMetrics::new);
+				log.info("Running delete finished with result: " + run.toString());
+			}
+		}
+	}
+
+	/**
+	 * Empties the tables that the deleters have marked for truncation with
+	 * TRUNCATE statements of at most TableConverter.ddlBatchSize tables each.
+	 * The tables of a statement that fails, for example because a table is
+	 * referenced by a foreign key of a table in another statement, are deleted
+	 * by their deleters instead.
+	 */
+	private void truncateTables(Connection source, Connection destination) throws SQLException
+	{
+		List<TableDeleter> truncate = new ArrayList<>();
+		for (TableDeleter deleter : deleters)
+		{
+			if (deleter.isTruncate())
+				truncate.add(deleter);
+		}
+		if (truncate.isEmpty())
+			return;
+		for (List<TableDeleter> batch : ConverterUtils.partition(truncate, Math.max(config.getDdlBatchSize(), 1)))
+		{
+			List<String> names = new ArrayList<>(batch.size());
+			for (TableDeleter deleter : batch)
+				names.add(deleter.table);
+			long startTime = System.currentTimeMillis();
+			try (Statement statement = destination.createStatement())
+			{
+				statement.executeUpdate("TRUNCATE TABLE " + String.join(", ", names));
+				if (!destination.getAutoCommit())
+					destination.commit();
+				log.info("Truncated tables " + String.join(", ", names) + " in "
+						+ (System.currentTimeMillis() - startTime) + " ms");
+			}
+			catch (SQLException e)
+			{
+				if (!destination.getAutoCommit())
+					destination.rollback();
+				log.warning("Truncating tables " + String.join(", ", names) + " failed, deleting the records instead: "
+						+ e.getMessage());
+				for (TableDeleter deleter : batch)
+					deleter.prepareWithoutTruncate(source, destination);
+			}
+		}
+	}
+
+	/**
+	 * Empties the Cloud Spanner tables that the deleters have marked for
+	 * recreation by dropping and recreating them one table at a time, as Cloud
+	 * Spanner does not accept a schema update while another schema update is
+	 * running. The records of a table that cannot be recreated are deleted by
+	 * its deleter instead.
+	 */
+	private void recreateTables(Connection source, Connection destination) throws SQLException
+	{
+		for (TableDeleter deleter : deleters)
+		{
+			List<String> statements = deleter.getRecreateStatements();
+			if (statements == null)
+				continue;
+			long startTime = System.currentTimeMillis();
+			DdlBatch batch = new DdlBatch(destination, config);
+			statements.forEach(batch::add);
+			try
+			{
+				batch.execute();
+				log.info("Recreated table " + deleter.table + " instead of deleting "
+						+ deleter.getTotalRecordCount() + " records in " + (System.currentTimeMillis() - startTime)
+						+ " ms");
+			}
+			catch (SQLException e)
+			{
+				log.warning("Recreating table " + deleter.table + " failed, deleting the records instead: "
+						+ e.getMessage());
+				deleter.prepareWithoutRecreate(source, destination);
+			}
+		}
+	}
+
+	private void copyData() throws SQLException
+	{
+		try (Connection source = sourcePool.getConnection(); Connection destination = destinationPool.getConnection())
+		{
+			prepareSourceConnection(source);
+			createTableWorkers(source, destination);
+			ConversionResult prepare = runWorkers(copyPreparers);
+			log.info("Preparing copy finished with result: " + prepare.toString());
+			boolean usesSource = config.getSourceDatabaseType() != DatabaseType.CloudSpanner;
+			ConversionResult run;
+			try (ProgressReporter progress = new ProgressReporter(config, copiers, metrics))
+			{
+				progress.start();
+				run = runTableWorkersByDepth(copiers, usesSource, false, metrics::getTable);
+			}
+			log.info("Running copy finished with result: " + run.toString());
+			storeWatermarks();
+		}
+	}
+
+	/**
+	 * Stores the new watermark of each table that has been copied without
+	 * errors
+	 */
+	private void storeWatermarks()
+	{
+		if (watermarks == null)
+			return;
+		for (AbstractTableWorker worker : copiers)
+		{
+			if (worker.isSuccessful())
+				watermarks.finished(worker.table);
+			else
+				log.warning("The watermark of table " + worker.table
+						+ " is not updated, as not all records were copied");
+		}
+	}
+
+	private void prepareSourceConnection(Connection source) throws SQLException
+	{
+		if (source.isWrapperFor(ICloudSpannerConnection.class))
+		{
+			ICloudSpannerConnection con = source.unwrap(ICloudSpannerConnection.class);
+			// Make sure no transaction is running
+			if (!con.isBatchReadOnly())
+			{
+				if (con.getAutoCommit())
+				{
+					con.setAutoCommit(false);
+				}
+				else
+				{
+					con.commit();
+				}
+				con.setBatchReadOnly(true);
+			}
+		}
+	}
+
+	private void initTables() throws SQLException
+	{
+		try (Connection source = sourcePool.getConnection(); Connection destination = destinationPool.getConnection())
+		{
+			if (sourceCatalog == null)
+				sourceCatalog = SchemaCatalog.load(source, config.getCatalog(), config.getSchema(),
+						config.getSourceDatabaseType());
+			if (config.isInferInterleavedTables())
+				sourceCatalog.loadForeignKeys(source);
+			destinationCatalog = SchemaCatalog.load(destination, config.getCatalog(), config.getSchema(),
+					config.getDestinationDatabaseType());
+		}
+		for (SchemaCatalog.TableInfo table : destinationCatalog.getTables())
+		{
+			if (sourceCatalog.containsTable(table.getName()))
+			{
+				tables.add(table.getName());
+			}
+		}
+		hierarchy = TableHierarchy.create(sourceCatalog, config);
+	}
+
+	private void createTableDeleters(Connection source, Connection destination) throws SQLException
+	{
+		for (String table : tables)
+		{
+			// Do not delete the data of tables that are being resumed
+			if (journal != null && config.isResume() && journal.hasCheckpoints(table))
+				continue;
+			TableDeleter worker = new TableDeleter(table, config, destinationCatalog);
+			deleters.add(worker);
+			deletePreparers.add(new TablePreparer(worker, source, destination));
+		}
+	}
+
+	private void createTableWorkers(Connection source, Connection destination) throws SQLException
+	{
+		for (String table : tables)
+		{
+			AbstractTableWorker worker = createTableWorker(table, config);
+			copiers.add(worker);
+			copyPreparers.add(new TablePreparer(worker, source, destination));
+		}
+	}
+
+	private AbstractTableWorker createTableWorker(String table, ConverterConfiguration config)
+	{
+		if (config.getSourceDatabaseType() == DatabaseType.CloudSpanner)
+			return new CloudSpannerTableWorker(table, config, destinationCatalog, watermarks);
+		return new GenericJdbcTableWorker(table, config, destinationCatalog, journal, watermarks);
+	}
+
+	/**
+	 * Runs the table workers of interleaved tables after the workers of their
+	 * parent tables, or before them if childrenFirst is true. Cloud Spanner
+	 * only accepts records of an interleaved table if the parent record
+	 * exists, and does not delete a parent record that still has children.
+	 */
+	private ConversionResult runTableWorkersByDepth(List<? extends AbstractTableWorker> workers, boolean usesSource,
+			boolean childrenFirst, Function<String, TableMetrics> tableMetrics)
+	{
+		List<? extends List<? extends AbstractTableWorker>> levels = hierarchy.groupByDepth(workers,
+				worker -> worker.table);
+		if (levels.size() <= 1)
+			return runTableWorkers(workers, usesSource, tableMetrics);
+		if (childrenFirst)
+			Collections.reverse(levels);
+		long startTime = System.currentTimeMillis();
+		List<ConversionResult> results = new ArrayList<>(levels.size());
+		for (int index = 0; index < levels.size(); index++)
+		{
+			log.info("Running level " + (index + 1) + " of " + levels.size() + " of the table hierarchy ("
+					+ levels.get(index).size() + " tables)");
+			results.add(runTableWorkers(levels.get(index), usesSource, tableMetrics));
+		}
+		return ConversionResult.combine(results, startTime, System.currentTimeMillis(), null);
+	}
+
+	/**
+	 * Runs the part workers of all given tables on one executor with a global
+	 * limit on the number of concurrent workers. A thread that finishes a part
+	 * worker picks up the next waiting part worker, regardless of the table it
+	 * belongs to. The connection pools are filled up front with a connection
+	 * for each worker that can run at the same time.
+	 */
+	private ConversionResult runTableWorkers(List<? extends AbstractTableWorker> workers, boolean usesSource,
+			Function<String, TableMetrics> tableMetrics)
+	{
+		Exception exception = null;
+		ExecutorService service = Executors.newFixedThreadPool(config.getMaxConcurrentPartWorkers());
+		long startTime = System.currentTimeMillis();
+		int plannedWorkers = 0;
+		for (AbstractTableWorker worker : workers)
+		{
+			plannedWorkers += worker.getNumberOfWorkers();
+		}
+		plannedWorkers = Math.min(plannedWorkers, config.getMaxConcurrentPartWorkers());
+		if (usesSource)
+			sourcePool.prewarm(plannedWorkers, service);
+		destinationPool.prewarm(plannedWorkers, service);
+		for (AbstractTableWorker worker : workers)
+		{
+			worker.start(sourcePool, destinationPool, tableMetrics.apply(worker.table));
+		}
+		TableScheduler.create(config).submit(workers, service);
+		service.shutdown();
+		try
+		{
+			if (!service.awaitTermination(config.getTableWorkerMaxWaitInMinutes(), TimeUnit.MINUTES))
+			{
+				log.severe("Workers did not finish within " + config.getTableWorkerMaxWaitInMinutes() + " minutes");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			exception = e;
+			service.shutdownNow();
+			log.severe("Error while waiting for workers to finish: " + e.getMessage());
+		}
+		long endTime = System.currentTimeMillis();
+		List<ConversionResult> results = new ArrayList<>(workers.size());
+		for (AbstractTableWorker worker : workers)
+		{
+			ConversionResult result = worker.getResult();
+			log.fine("Table " + worker.table + " finished with result: " + result.toString());
+			results.add(result);
+		}
+		return ConversionResult.combine(results, startTime, endTime, exception);
+	}
+
+	private ConversionResult runWorkers(List<? extends Callable<ConversionResult>> callables)
+	{
+		Exception exception = null;
+		ExecutorService service = Executors.newFixedThreadPool(config.getNumberOfTableWorkers());
+		List<Future<ConversionResult>> futures = new ArrayList<>(callables.size());
+		long startTime = System.currentTimeMillis();
+		for (Callable<ConversionResult> callable : callables)
+		{
+			futures.add(service.submit(callable));
+		}
+		service.shutdown();
+		try
+		{
+			service.awaitTermination(config.getTableWorkerMaxWaitInMinutes(), TimeUnit.MINUTES);
+		}
+		catch (InterruptedException e)
+		{
+			exception = e;
+			service.shutdownNow();
+			log.severe("Error while waiting for workers to finish: " + e.getMessage());
+		}
+		long endTime = System.currentTimeMillis();
+		return ConversionResult.collect(futures, startTime, endTime, exception);
+	}
+
+}
@@ -0,0 +1,35 @@
+package nl.topicus.spanner.converter.data;
+
+import java.sql.SQLException;
+
+/**
+ * Writes records to a destination table. A writer is bound to one destination
+ * connection and may only be used by one thread at a time. A writer must be
+ * closed before its connection is returned to the pool.
+ */
+interface DestinationWriter extends AutoCloseable
+{
+	/**
+	 * Writes one record to the destination. The writer may buffer the record
+	 * until {@link #commit()} is called, and may commit on its own if the
+	 * buffer would otherwise exceed the limits of one transaction. The given
+	 * array may be reused by the caller after this method returns.
+	 * 
+	 * @param row
+	 *            The values of the record in the order of the insert columns
+	 * @return The size of the record in bytes
+	 */
+	long write(Object[] row) throws SQLException;
+
+	/**
+	 * Writes all buffered records and commits the transaction
+	 */
+	void commit() throws SQLException;
+
+	/**
+	 * Releases the statements of this writer. Records that have not been
+	 * committed are discarded.
+	 */
+	@Override
+	void close() throws SQLException;
+}
@@ -1,74 +1,184 @@
-package nl.topicus.spanner.converter.data;
-
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.logging.Logger;
-
-import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
-
-public class GenericJdbcTableWorker extends AbstractTableWorker
-{
-	private static final Logger log = Logger.getLogger(GenericJdbcTableWorker.class.getName());
-
-	private long totalRecordCount;
-
-	GenericJdbcTableWorker(String table, ConverterConfiguration config)
-	{
-		super(table, config);
-	}
-
-	@Override
-	protected List<AbstractTablePartWorker> prepareWorkers(Connection source, Connection destination)
-			throws SQLException
-	{
-		String tableSpec = converterUtils.getTableSpec(config.getCatalog(), config.getSchema(), table);
-		Columns insertCols = converterUtils.getColumns(destination, config.getCatalog(), config.getSchema(), table,
-				false);
-		Columns selectCols = converterUtils.getColumns(destination, config.getCatalog(), config.getSchema(), table,
-				true);
-		if (insertCols.getPrimaryKeyCols().isEmpty())
-		{
-			log.warning("Table " + tableSpec + " does not have a primary key. No data will be copied.");
-			return Collections.emptyList();
-		}
-
-		int batchSize = converterUtils.calculateActualBatchSize(insertCols.getColumns().size(), destination,
-				config.getCatalog(), config.getSchema(), table);
-		totalRecordCount = converterUtils.getSourceRecordCount(source, tableSpec);
-
-		int numberOfWorkers = calculateNumberOfWorkers(totalRecordCount, batchSize);
-		log.info("About to copy " + totalRecordCount + " records from table " + tableSpec + " with batch size "
-				+ batchSize + " and " + numberOfWorkers + " workers");
-		long numberOfRecordsPerWorker = totalRecordCount / numberOfWorkers;
-		if (totalRecordCount % numberOfWorkers > 0)
-			numberOfRecordsPerWorker++;
-		long currentOffset = 0;
-
-		List<AbstractTablePartWorker> workers = new ArrayList<>(numberOfWorkers);
-		for (int workerNumber = 0; workerNumber < numberOfWorkers; workerNumber++)
-		{
-			long workerRecordCount = Math.min(numberOfRecordsPerWorker, totalRecordCount - currentOffset);
-			UploadWorker worker = new UploadWorker("UploadWorker-" + workerNumber, config, DataCopier.SELECT_FORMAT,
-					tableSpec, table, insertCols, selectCols, currentOffset, workerRecordCount, batchSize);
-			workers.add(worker);
-			currentOffset = currentOffset + numberOfRecordsPerWorker;
-		}
-		return workers;
-	}
-
-	@Override
-	public long getTotalRecordCount()
-	{
-		return totalRecordCount;
-	}
-
-	private int calculateNumberOfWorkers(long totalRecordCount, int batchSize)
-	{
-		long res = totalRecordCount / batchSize + 1;
-		return (int) Math.min(res, config.getMaxNumberOfWorkers());
-	}
-
-}
+package nl.topicus.spanner.converter.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.ReadMode;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.data.CheckpointJournal.WorkerCheckpoint;
+import nl.topicus.spanner.converter.util.SchemaCatalog;
+
+public class GenericJdbcTableWorker extends AbstractTableWorker
+{
+	private static final Logger log = Logger.getLogger(GenericJdbcTableWorker.class.getName());
+
+	private long totalRecordCount;
+
+	/**
+	 * The journal to record the progress of the upload workers in, or
+	 * <code>null</code> if no checkpoints should be recorded
+	 */
+	private final CheckpointJournal journal;
+
+	/**
+	 * The watermarks of the tables that are copied incrementally, or
+	 * <code>null</code> if all records should be copied
+	 */
+	private final WatermarkStore watermarks;
+
+	GenericJdbcTableWorker(String table, ConverterConfiguration config, SchemaCatalog destinationCatalog,
+			CheckpointJournal journal, WatermarkStore watermarks)
+	{
+		super(table, config, destinationCatalog);
+		this.journal = journal;
+		this.watermarks = watermarks;
+	}
+
+	@Override
+	protected List<AbstractTablePartWorker> prepareWorkers(Connection source, Connection destination)
+			throws SQLException
+	{
+		String tableSpec = converterUtils.getTableSpec(config.getCatalog(), config.getSchema(), table);
+		Columns insertCols = converterUtils.getColumns(destination, config.getCatalog(), config.getSchema(), table,
+				false);
+		Columns selectCols = converterUtils.getColumns(destination, config.getCatalog(), config.getSchema(), table,
+				true);
+		if (insertCols.getPrimaryKeyCols().isEmpty())
+		{
+			log.warning("Table " + tableSpec + " does not have a primary key. No data will be copied.");
+			return Collections.emptyList();
+		}
+
+		int batchSize = converterUtils.calculateActualBatchSize(insertCols.getColumns().size(), destination,
+				config.getCatalog(), config.getSchema(), table);
+		int maxBatchSize = converterUtils.calculateMaxBatchSize(insertCols.getColumns().size(), destination,
+				config.getCatalog(), config.getSchema(), table);
+		String selectFormat = getSelectFormat();
+		String watermarkColumn = watermarks == null ? null : config.getWatermarkColumns().get(table);
+		if (watermarkColumn != null)
+		{
+			// Only select the records that have changed since the last copy
+			String changedRecords = watermarks.getChangedRecords(source, destination, tableSpec, table,
+					watermarkColumn);
+			selectFormat = selectFormat.replace("$TABLE", changedRecords);
+			totalRecordCount = converterUtils.getSourceRecordCount(source, changedRecords);
+		}
+		else
+		{
+			totalRecordCount = converterUtils.getSourceRecordCount(source, tableSpec);
+		}
+
+		int numberOfWorkers = calculateNumberOfWorkers(totalRecordCount, batchSize);
+		log.info("About to copy " + totalRecordCount + " records from table " + tableSpec + " with batch size "
+				+ batchSize + " and " + numberOfWorkers + " workers");
+		long numberOfRecordsPerWorker = totalRecordCount / numberOfWorkers;
+		if (totalRecordCount % numberOfWorkers > 0)
+			numberOfRecordsPerWorker++;
+		Map<String, WorkerCheckpoint> checkpoints = journal == null || !config.isResume() ? Collections.emptyMap()
+				: journal.getCheckpoints(table);
+		if (config.getReadMode() != ReadMode.OffsetPaging && !checkpoints.isEmpty())
+		{
+			return createResumedWorkers(tableSpec, insertCols, selectCols, selectFormat, checkpoints,
+					numberOfRecordsPerWorker, batchSize, maxBatchSize);
+		}
+		List<KeyRange> keyRanges = null;
+		if (config.getReadMode() != ReadMode.OffsetPaging)
+		{
+			keyRanges = new SplitPlanner(config, config.getSourceDatabaseType()).plan(source, tableSpec, table,
+					selectCols, totalRecordCount, numberOfWorkers);
+			numberOfWorkers = keyRanges.size();
+		}
+		long currentOffset = 0;
+
+		List<AbstractTablePartWorker> workers = new ArrayList<>(numberOfWorkers);
+		for (int workerNumber = 0; workerNumber < numberOfWorkers; workerNumber++)
+		{
+			String name = "UploadWorker-" + workerNumber;
+			long beginOffset = currentOffset;
+			long workerRecordCount = Math.min(numberOfRecordsPerWorker, totalRecordCount - currentOffset);
+			currentOffset = currentOffset + numberOfRecordsPerWorker;
+			WorkerCheckpoint checkpoint = checkpoints.get(name);
+			if (checkpoint != null && checkpoint.finished)
+				continue;
+			if (checkpoint != null && checkpoint.offset > beginOffset)
+			{
+				workerRecordCount = workerRecordCount - (checkpoint.offset - beginOffset);
+				beginOffset = checkpoint.offset;
+			}
+			KeyRange keyRange = keyRanges == null ? null : keyRanges.get(workerNumber);
+			UploadWorker worker = new UploadWorker(name, config, selectFormat, tableSpec, table, insertCols, selectCols,
+					keyRange, beginOffset, workerRecordCount, batchSize);
+			worker.setMaxBatchSize(maxBatchSize);
+			if (checkpoint != null)
+				worker.resumeAtOffset();
+			if (journal != null)
+			{
+				if (checkpoint == null)
+					journal.planned(table, name, keyRange);
+				worker.setCheckpointJournal(journal);
+			}
+			workers.add(worker);
+		}
+		return workers;
+	}
+
+	/**
+	 * Creates workers for the key ranges of a previous run that did not
+	 * finish. Each worker continues after the last key that was committed for
+	 * its range.
+	 */
+	private List<AbstractTablePartWorker> createResumedWorkers(String tableSpec, Columns insertCols,
+			Columns selectCols, String selectFormat, Map<String, WorkerCheckpoint> checkpoints,
+			long numberOfRecordsPerWorker, int batchSize, int maxBatchSize)
+	{
+		List<AbstractTablePartWorker> workers = new ArrayList<>(checkpoints.size());
+		for (Entry<String, WorkerCheckpoint> entry : checkpoints.entrySet())
+		{
+			WorkerCheckpoint checkpoint = entry.getValue();
+			if (checkpoint.finished || checkpoint.range == null)
+				continue;
+			UploadWorker worker = new UploadWorker(entry.getKey(), config, selectFormat, tableSpec, table, insertCols,
+					selectCols, checkpoint.range, 0L, numberOfRecordsPerWorker, batchSize);
+			worker.setMaxBatchSize(maxBatchSize);
+			worker.setCheckpointJournal(journal);
+			worker.resumeAfter(checkpoint.lastKey);
+			workers.add(worker);
+		}
+		log.info("Resuming copy of table " + tableSpec + " with " + workers.size() + " unfinished workers");
+		return workers;
+	}
+
+	private String getSelectFormat()
+	{
+		switch (config.getReadMode())
+		{
+		case KeysetPaging:
+			return DataCopier.KEYSET_SELECT_FORMAT;
+		case Streaming:
+		case PostgreSQLCopy:
+			return DataCopier.STREAMING_SELECT_FORMAT;
+		case OffsetPaging:
+		default:
+			return DataCopier.SELECT_FORMAT;
+		}
+	}
+
+	@Override
+	public long getTotalRecordCount()
+	{
+		return totalRecordCount;
+	}
+
+	private int calculateNumberOfWorkers(long totalRecordCount, int batchSize)
+	{
+		long res = totalRecordCount / batchSize + 1;
+		return (int) Math.min(res, config.getMaxNumberOfWorkers());
+	}
+
+}
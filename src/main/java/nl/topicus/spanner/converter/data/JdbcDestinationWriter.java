@@ -0,0 +1,160 @@
+package nl.topicus.spanner.converter.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.metrics.WorkerMetrics;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+
+/**
+ * Writes records using a JDBC INSERT statement, optionally using JDBC
+ * batching. In upsert mode, the statement updates records that already exist
+ * in the destination. Records that are written directly from a result set are copied
+ * with a {@link ColumnBinder} for each column.
+ */
+final class JdbcDestinationWriter implements ResultSetWriter
+{
+	private final ConverterConfiguration config;
+
+	private final ConverterUtils converterUtils;
+
+	private final WorkerMetrics metrics;
+
+	private final Connection destination;
+
+	private final PreparedStatement insertStatement;
+
+	private final List<Integer> columnTypes;
+
+	/**
+	 * The columns that are part of the primary key
+	 */
+	private final boolean[] keyColumns;
+
+	/**
+	 * The binders for copying records from a result set, created on first use
+	 */
+	private ColumnBinder[] binders;
+
+	private int batchedStatements;
+
+	/**
+	 * The time spent setting parameters since the last commit
+	 */
+	private long bindNanos;
+
+	JdbcDestinationWriter(ConverterConfiguration config, Connection destination, String destinationTable,
+			Columns insertCols, WorkerMetrics metrics, boolean upsert) throws SQLException
+	{
+		this.config = config;
+		this.converterUtils = new ConverterUtils(config);
+		this.metrics = metrics;
+		this.destination = destination;
+		this.columnTypes = insertCols.getColumnTypes();
+		this.keyColumns = new boolean[columnTypes.size()];
+		for (String key : insertCols.getPrimaryKeyCols())
+		{
+			int index = insertCols.getColumnIndex(key);
+			if (index > -1)
+				keyColumns[index] = true;
+		}
+		String sql = "INSERT INTO " + destinationTable + " (" + insertCols.getColumnNames() + ") VALUES \n";
+		sql = sql + "(" + insertCols.getColumnParameters() + ")";
+		if (upsert)
+			sql = sql + config.getDestinationDatabaseType().getUpsertClause(insertCols.getPrimaryKeyCols(),
+					insertCols.getColumns());
+		this.insertStatement = destination.prepareStatement(sql);
+	}
+
+	@Override
+	public long write(Object[] row) throws SQLException
+	{
+		long startTime = System.nanoTime();
+		long size = 0;
+		int index = 1;
+		for (Integer type : columnTypes)
+		{
+			insertStatement.setObject(index, row[index - 1], type);
+			size += converterUtils.getActualDataSize(type, row[index - 1]);
+			index++;
+		}
+		bindNanos += System.nanoTime() - startTime;
+		execute();
+		return size;
+	}
+
+	@Override
+	public long write(ResultSet rs) throws SQLException
+	{
+		if (binders == null)
+			binders = ColumnBinder.create(columnTypes, keyColumns, config.getDestinationDatabaseType());
+		long startTime = System.nanoTime();
+		long size = 0;
+		for (int index = 0; index < binders.length; index++)
+		{
+			size += binders[index].bind(rs, insertStatement, index + 1);
+		}
+		bindNanos += System.nanoTime() - startTime;
+		execute();
+		return size;
+	}
+
+	@Override
+	public Object getLastValue(int column)
+	{
+		return binders[column].getLastValue();
+	}
+
+	private void execute() throws SQLException
+	{
+		if (config.isUseJdbcBatching())
+		{
+			insertStatement.addBatch();
+			batchedStatements++;
+			if (batchedStatements >= config.getMaxStatementsInOneJdbcBatch())
+			{
+				executeBatch();
+			}
+		}
+		else
+		{
+			long startTime = System.nanoTime();
+			insertStatement.executeUpdate();
+			metrics.executed(System.nanoTime() - startTime);
+		}
+	}
+
+	private void executeBatch() throws SQLException
+	{
+		long startTime = System.nanoTime();
+		insertStatement.executeBatch();
+		batchedStatements = 0;
+		metrics.executed(System.nanoTime() - startTime);
+	}
+
+	@Override
+	public void commit() throws SQLException
+	{
+		if (batchedStatements > 0)
+		{
+			executeBatch();
+		}
+		if (bindNanos > 0L)
+		{
+			metrics.bound(bindNanos);
+			bindNanos = 0L;
+		}
+		destination.commit();
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		insertStatement.close();
+	}
+
+}
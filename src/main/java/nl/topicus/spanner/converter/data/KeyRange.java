@@ -0,0 +1,152 @@
+package nl.topicus.spanner.converter.data;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of primary key values of a table. The begin key is inclusive and
+ * the end key is exclusive. A <code>null</code> begin or end key means that
+ * the range is unbounded on that side.
+ */
+final class KeyRange
+{
+	final List<Object> beginKey;
+
+	final List<Object> endKey;
+
+	KeyRange(List<Object> beginKey, List<Object> endKey)
+	{
+		this.beginKey = beginKey;
+		this.endKey = endKey;
+	}
+
+	/**
+	 * @param columns
+	 *            The columns of the table
+	 * @param continueAfterKey
+	 *            If true, the where clause will select the rows after a given
+	 *            key instead of from the begin key of the range
+	 * @param rowValue
+	 *            Whether the database supports row value comparisons
+	 * @return A where clause selecting the rows of this range
+	 */
+	String getWhereClause(Columns columns, boolean continueAfterKey, boolean rowValue)
+	{
+		List<String> res = new ArrayList<>(2);
+		if (continueAfterKey)
+			res.add(columns.getPrimaryKeyComparison("", ">", rowValue));
+		else if (beginKey != null)
+			res.add(columns.getPrimaryKeyComparison("", ">=", rowValue));
+		if (endKey != null)
+			res.add(columns.getPrimaryKeyComparison("", "<", rowValue));
+		if (res.isEmpty())
+			return "1=1";
+		return String.join(" AND ", res);
+	}
+
+	/**
+	 * Binds the parameters of the where clause returned by
+	 * {@link #getWhereClause(Columns, boolean, boolean)}
+	 * 
+	 * @param statement
+	 *            The statement to bind the parameters of
+	 * @param index
+	 *            The index of the first parameter
+	 * @param lastKey
+	 *            The key to continue after, or <code>null</code> to start at
+	 *            the begin key of the range
+	 * @param rowValue
+	 *            Whether the database supports row value comparisons
+	 * @return The index of the next parameter
+	 */
+	int bind(PreparedStatement statement, int index, List<Object> lastKey, boolean rowValue) throws SQLException
+	{
+		for (Object value : getParameters(lastKey, rowValue))
+		{
+			statement.setObject(index, value);
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Creates the same where clause as
+	 * {@link #getWhereClause(Columns, boolean, boolean)}, but with the key
+	 * values as literals instead of parameters. This is needed for statements
+	 * that do not support parameters, such as <code>COPY ... TO STDOUT</code>.
+	 */
+	String getLiteralWhereClause(Columns columns, List<Object> lastKey, boolean rowValue)
+	{
+		String clause = getWhereClause(columns, lastKey != null, rowValue);
+		StringBuilder res = new StringBuilder(clause.length() + 64);
+		int start = 0;
+		for (Object value : getParameters(lastKey, rowValue))
+		{
+			int index = clause.indexOf('?', start);
+			res.append(clause, start, index).append(toLiteral(value));
+			start = index + 1;
+		}
+		res.append(clause.substring(start));
+		return res.toString();
+	}
+
+	/**
+	 * @return The values of the parameters of the where clause in the order
+	 *         of the parameters
+	 */
+	private List<Object> getParameters(List<Object> lastKey, boolean rowValue)
+	{
+		List<Object> res = new ArrayList<>();
+		if (lastKey != null)
+			addKey(res, lastKey, rowValue);
+		else if (beginKey != null)
+			addKey(res, beginKey, rowValue);
+		if (endKey != null)
+			addKey(res, endKey, rowValue);
+		return res;
+	}
+
+	private static void addKey(List<Object> parameters, List<Object> key, boolean rowValue)
+	{
+		if (rowValue)
+		{
+			parameters.addAll(key);
+		}
+		else
+		{
+			for (int i = 0; i < key.size(); i++)
+			{
+				parameters.addAll(key.subList(0, i + 1));
+			}
+		}
+	}
+
+	static String toLiteral(Object value)
+	{
+		if (value == null)
+			return "NULL";
+		if (value instanceof BigDecimal)
+			return ((BigDecimal) value).toPlainString();
+		if (value instanceof Number)
+			return value.toString();
+		if (value instanceof Boolean)
+			return ((Boolean) value).booleanValue() ? "TRUE" : "FALSE";
+		if (value instanceof byte[])
+		{
+			StringBuilder res = new StringBuilder("'\\x");
+			for (byte b : (byte[]) value)
+				res.append(String.format("%02x", b));
+			return res.append("'").toString();
+		}
+		return "'" + value.toString().replace("'", "''") + "'";
+	}
+
+	@Override
+	public String toString()
+	{
+		return "[" + (beginKey == null ? "" : beginKey) + ", " + (endKey == null ? "" : endKey) + ")";
+	}
+}
\ No newline at end of file
@@ -1,8 +1,6 @@
 package nl.topicus.spanner.converter.data;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.logging.Logger;
 
@@ -14,24 +12,38 @@ public class PartitionWorker extends AbstractTablePartWorker
 
 	private final ResultSet resultSet;
 
+	private final int batchSize;
+
 	public PartitionWorker(String name, ConverterConfiguration config, ResultSet resultSet, String sourceTable,
-			String destinationTable, Columns insertCols)
+			String destinationTable, Columns insertCols, int batchSize)
 	{
 		super(config, sourceTable, destinationTable, insertCols);
 		this.resultSet = resultSet;
+		this.batchSize = batchSize;
 	}
 
 	@Override
 	protected void run() throws Exception
 	{
-		try (Connection destination = DriverManager.getConnection(config.getUrlDestination()))
+		try (Connection destination = destinationPool.getConnection())
 		{
 			log.fine(sourceTable + ": Starting copying partition");
 			destination.setAutoCommit(false);
 
-			PreparedStatement insertStatement = createInsertStatement(destination);
-			copyResultSet(resultSet, insertStatement);
-			destination.commit();
+			try
+			{
+				startCopy(destination, batchSize);
+				while (copyRecords(resultSet, getBatchSize()) > 0)
+				{
+					commitCopy();
+				}
+				finishCopy();
+			}
+			finally
+			{
+				// A copy that failed has not closed its writer
+				closeWriter();
+			}
 		}
 		log.fine(sourceTable + ": Finished copying " + getRecordCount() + " records");
 	}
@@ -0,0 +1,206 @@
+package nl.topicus.spanner.converter.data;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
+
+/**
+ * Reads records from a PostgreSQL source using
+ * <code>COPY (SELECT ...) TO STDOUT</code> in text format. Each record is
+ * parsed directly into an array of values based on the column types, which
+ * avoids the per value overhead of a JDBC result set.
+ */
+final class PostgreSQLCopyReader implements AutoCloseable
+{
+	private static final DateTimeFormatter TIMESTAMP_FORMAT = new DateTimeFormatterBuilder()
+			.append(DateTimeFormatter.ISO_LOCAL_DATE).appendLiteral(' ').append(DateTimeFormatter.ISO_LOCAL_TIME)
+			.optionalStart().appendOffset("+HH:mm", "+00").optionalEnd()
+			.optionalStart().appendOffset("+HH", "+00").optionalEnd().toFormatter();
+
+	private final List<Integer> columnTypes;
+
+	private final CopyOut copyOut;
+
+	private final StringBuilder field = new StringBuilder();
+
+	PostgreSQLCopyReader(Connection source, String select, List<Integer> columnTypes) throws SQLException
+	{
+		if (!source.isWrapperFor(PGConnection.class))
+		{
+			throw new IllegalArgumentException("The given source connection is not a PGConnection");
+		}
+		this.columnTypes = columnTypes;
+		this.copyOut = source.unwrap(PGConnection.class).getCopyAPI().copyOut("COPY (" + select + ") TO STDOUT");
+	}
+
+	/**
+	 * @return The values of the next record, or <code>null</code> if all
+	 *         records have been read
+	 */
+	Object[] next() throws SQLException
+	{
+		byte[] data = copyOut.readFromCopy();
+		if (data == null)
+			return null;
+		String line = new String(data, StandardCharsets.UTF_8);
+		Object[] row = new Object[columnTypes.size()];
+		int pos = 0;
+		for (int index = 0; index < row.length; index++)
+		{
+			pos = readField(line, pos);
+			if (field.length() == 2 && field.charAt(0) == '\\' && field.charAt(1) == 'N')
+				row[index] = null;
+			else
+				row[index] = convert(columnTypes.get(index), unescape());
+			// Skip the delimiter
+			pos++;
+		}
+		return row;
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		if (copyOut.isActive())
+			copyOut.cancelCopy();
+	}
+
+	/**
+	 * Reads the raw (still escaped) field starting at pos into the field
+	 * buffer
+	 * 
+	 * @return The position of the delimiter after the field
+	 */
+	private int readField(String line, int pos)
+	{
+		field.setLength(0);
+		while (pos < line.length())
+		{
+			char c = line.charAt(pos);
+			if (c == '\t' || c == '\n')
+				break;
+			field.append(c);
+			if (c == '\\' && pos + 1 < line.length())
+			{
+				pos++;
+				field.append(line.charAt(pos));
+			}
+			pos++;
+		}
+		return pos;
+	}
+
+	private String unescape()
+	{
+		if (field.indexOf("\\") == -1)
+			return field.toString();
+		StringBuilder res = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++)
+		{
+			char c = field.charAt(i);
+			if (c != '\\' || i + 1 == field.length())
+			{
+				res.append(c);
+				continue;
+			}
+			i++;
+			c = field.charAt(i);
+			switch (c)
+			{
+			case 'b':
+				res.append('\b');
+				break;
+			case 'f':
+				res.append('\f');
+				break;
+			case 'n':
+				res.append('\n');
+				break;
+			case 'r':
+				res.append('\r');
+				break;
+			case 't':
+				res.append('\t');
+				break;
+			case 'v':
+				res.append('\u000B');
+				break;
+			default:
+				res.append(c);
+				break;
+			}
+		}
+		return res.toString();
+	}
+
+	private Object convert(int type, String value)
+	{
+		switch (type)
+		{
+		case Types.BOOLEAN:
+		case Types.BIT:
+			return Boolean.valueOf("t".equals(value) || "true".equals(value));
+		case Types.BIGINT:
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return Long.valueOf(value);
+		case Types.FLOAT:
+		case Types.REAL:
+		case Types.DOUBLE:
+			return Double.valueOf(value);
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return new BigDecimal(value);
+		case Types.DATE:
+			return Date.valueOf(value);
+		case Types.TIME:
+			return Time.valueOf(LocalTime.parse(value));
+		case Types.TIMESTAMP:
+			return toTimestamp(value);
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			return toBytes(value);
+		default:
+			return value;
+		}
+	}
+
+	private Timestamp toTimestamp(String value)
+	{
+		if (TIMESTAMP_FORMAT.parse(value).isSupported(ChronoField.OFFSET_SECONDS))
+			return Timestamp.from(OffsetDateTime.parse(value, TIMESTAMP_FORMAT).toInstant());
+		return Timestamp.valueOf(LocalDateTime.parse(value, TIMESTAMP_FORMAT));
+	}
+
+	private byte[] toBytes(String value)
+	{
+		// bytea values are returned in hex format (\x0a0b...)
+		if (!value.startsWith("\\x"))
+			return value.getBytes(StandardCharsets.UTF_8);
+		byte[] res = new byte[(value.length() - 2) / 2];
+		for (int i = 0; i < res.length; i++)
+		{
+			res[i] = (byte) Integer.parseInt(value.substring(2 + i * 2, 4 + i * 2), 16);
+		}
+		return res;
+	}
+
+}
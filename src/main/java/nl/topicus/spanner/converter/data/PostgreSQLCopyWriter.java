@@ -0,0 +1,252 @@
+package nl.topicus.spanner.converter.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.metrics.WorkerMetrics;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+
+/**
+ * Writes records to a PostgreSQL destination using
+ * <code>COPY ... FROM STDIN</code> in text format. The records are streamed to
+ * the server while they are written, and each call to {@link #commit()} ends
+ * the running COPY command and commits the transaction.
+ *
+ * In upsert mode, the records are copied into a temporary staging table that
+ * is emptied at each commit. Each commit then merges the staging table into
+ * the destination table with one <code>INSERT ... ON CONFLICT DO UPDATE</code>
+ * statement, so existing records are updated without giving up the speed of
+ * COPY.
+ */
+final class PostgreSQLCopyWriter implements DestinationWriter
+{
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private final ConverterUtils converterUtils;
+
+	private final WorkerMetrics metrics;
+
+	private final Connection destination;
+
+	private final PGConnection pgConnection;
+
+	private final String copySql;
+
+	private final List<Integer> columnTypes;
+
+	/**
+	 * The statement that merges the staging table into the destination table,
+	 * or <code>null</code> if the records are copied into the destination
+	 * table directly
+	 */
+	private final String mergeSql;
+
+	private PGCopyOutputStream copyStream;
+
+	private Writer out;
+
+	/**
+	 * The time spent writing records to the running COPY command
+	 */
+	private long bindNanos;
+
+	PostgreSQLCopyWriter(ConverterConfiguration config, Connection destination, String destinationTable,
+			Columns insertCols, WorkerMetrics metrics, boolean upsert) throws SQLException
+	{
+		if (!destination.isWrapperFor(PGConnection.class))
+		{
+			throw new IllegalArgumentException("The given destination connection is not a PGConnection");
+		}
+		this.converterUtils = new ConverterUtils(config);
+		this.metrics = metrics;
+		this.destination = destination;
+		this.pgConnection = destination.unwrap(PGConnection.class);
+		this.columnTypes = insertCols.getColumnTypes();
+		String copyTable = destinationTable;
+		if (upsert)
+		{
+			copyTable = createStagingTable(destinationTable);
+			this.mergeSql = "INSERT INTO " + destinationTable + " (" + insertCols.getColumnNames() + ") SELECT "
+					+ insertCols.getColumnNames() + " FROM " + copyTable
+					+ config.getDestinationDatabaseType().getUpsertClause(insertCols.getPrimaryKeyCols(),
+							insertCols.getColumns());
+		}
+		else
+		{
+			this.mergeSql = null;
+		}
+		this.copySql = "COPY " + copyTable + " (" + insertCols.getColumnNames() + ") FROM STDIN";
+	}
+
+	/**
+	 * Creates the staging table for the destination table if this session
+	 * does not have one yet. Pooled connections keep their staging tables, as
+	 * temporary tables live as long as the session.
+	 *
+	 * @return The name of the staging table
+	 */
+	private String createStagingTable(String destinationTable) throws SQLException
+	{
+		String stagingTable = "converter_staging_" + destinationTable.replace('.', '_');
+		try (Statement statement = destination.createStatement())
+		{
+			statement.executeUpdate("CREATE TEMPORARY TABLE IF NOT EXISTS " + stagingTable + " (LIKE "
+					+ destinationTable + " INCLUDING DEFAULTS) ON COMMIT DELETE ROWS");
+		}
+		if (!destination.getAutoCommit())
+			destination.commit();
+		return stagingTable;
+	}
+
+	@Override
+	public long write(Object[] row) throws SQLException
+	{
+		long startTime = System.nanoTime();
+		if (copyStream == null)
+		{
+			copyStream = new PGCopyOutputStream(pgConnection, copySql, BUFFER_SIZE);
+			out = new BufferedWriter(new OutputStreamWriter(copyStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+		}
+		long size = 0;
+		try
+		{
+			for (int index = 0; index < row.length; index++)
+			{
+				if (index > 0)
+					out.write('\t');
+				int type = columnTypes.get(index);
+				writeValue(type, row[index]);
+				size += converterUtils.getActualDataSize(type, row[index]);
+			}
+			out.write('\n');
+		}
+		catch (IOException e)
+		{
+			throw new SQLException("Could not write record to COPY stream: " + e.getMessage(), e);
+		}
+		bindNanos += System.nanoTime() - startTime;
+		return size;
+	}
+
+	@Override
+	public void commit() throws SQLException
+	{
+		if (copyStream != null)
+		{
+			try
+			{
+				long startTime = System.nanoTime();
+				out.flush();
+				copyStream.endCopy();
+				metrics.bound(bindNanos);
+				metrics.executed(System.nanoTime() - startTime);
+			}
+			catch (IOException e)
+			{
+				throw new SQLException("Could not end COPY command: " + e.getMessage(), e);
+			}
+			finally
+			{
+				copyStream = null;
+				out = null;
+				bindNanos = 0L;
+			}
+			if (mergeSql != null)
+			{
+				long startTime = System.nanoTime();
+				try (Statement statement = destination.createStatement())
+				{
+					statement.executeUpdate(mergeSql);
+				}
+				metrics.executed(System.nanoTime() - startTime);
+			}
+		}
+		destination.commit();
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		// A COPY command that is still running would block the connection
+		if (copyStream != null && copyStream.isActive())
+			copyStream.cancelCopy();
+		copyStream = null;
+		out = null;
+	}
+
+	private void writeValue(int type, Object value) throws IOException
+	{
+		if (value == null)
+		{
+			out.write("\\N");
+			return;
+		}
+		switch (type)
+		{
+		case Types.BOOLEAN:
+		case Types.BIT:
+			out.write(((Boolean) value).booleanValue() ? 't' : 'f');
+			break;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			// bytea hex format, with the backslash escaped for the text format
+			out.write("\\\\x");
+			for (byte b : (byte[]) value)
+			{
+				out.write(HEX[(b >> 4) & 0xF]);
+				out.write(HEX[b & 0xF]);
+			}
+			break;
+		default:
+			if (value instanceof BigDecimal)
+				out.write(((BigDecimal) value).toPlainString());
+			else
+				writeEscaped(value.toString());
+			break;
+		}
+	}
+
+	private void writeEscaped(String value) throws IOException
+	{
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			switch (c)
+			{
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			default:
+				out.write(c);
+				break;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,259 @@
+package nl.topicus.spanner.converter.data;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.ProgressFormat;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.metrics.ConverterMetrics;
+import nl.topicus.spanner.converter.metrics.TableMetrics;
+
+/**
+ * Logs the progress of a data copy at a fixed interval, for all tables
+ * together and for each table that is being copied. The progress is computed
+ * from the committed record and byte counters of the metrics of each table and
+ * the number of records of each table that was determined when the table
+ * worker was prepared. The throughput is the throughput during the last
+ * interval, and the estimated remaining time is based on the average
+ * throughput since the copy started.
+ */
+final class ProgressReporter implements Closeable
+{
+	private static final Logger log = Logger.getLogger(ProgressReporter.class.getName());
+
+	private static final double BYTES_PER_MEGABYTE = 1024d * 1024d;
+
+	/**
+	 * The progress of one table or of all tables
+	 */
+	private static final class Progress
+	{
+		private final String table;
+
+		private final long rows;
+
+		private final long totalRows;
+
+		private final double rowsPerSecond;
+
+		private final double megabytesPerSecond;
+
+		/**
+		 * The estimated number of seconds until the copy is finished, or -1 if
+		 * unknown
+		 */
+		private final long etaSeconds;
+
+		private Progress(String table, long rows, long totalRows, double rowsPerSecond, double megabytesPerSecond,
+				long etaSeconds)
+		{
+			this.table = table;
+			this.rows = rows;
+			this.totalRows = totalRows;
+			this.rowsPerSecond = rowsPerSecond;
+			this.megabytesPerSecond = megabytesPerSecond;
+			this.etaSeconds = etaSeconds;
+		}
+
+		private double getPercent()
+		{
+			if (totalRows <= 0L)
+				return 100d;
+			return Math.min(100d, rows * 100d / totalRows);
+		}
+	}
+
+	private final List<? extends AbstractTableWorker> workers;
+
+	private final ConverterMetrics metrics;
+
+	private final int intervalSeconds;
+
+	private final ProgressFormat format;
+
+	/**
+	 * The record and byte count of each table at the previous report
+	 */
+	private final Map<String, long[]> previousCounts = new HashMap<>();
+
+	private long startTime;
+
+	private long previousTime;
+
+	private ScheduledExecutorService scheduler;
+
+	ProgressReporter(ConverterConfiguration config, List<? extends AbstractTableWorker> workers,
+			ConverterMetrics metrics)
+	{
+		this.workers = workers;
+		this.metrics = metrics;
+		this.intervalSeconds = config.getProgressIntervalSeconds();
+		this.format = config.getProgressFormat();
+	}
+
+	/**
+	 * Starts reporting the progress, unless progress reporting has been
+	 * disabled
+	 */
+	void start()
+	{
+		if (intervalSeconds <= 0)
+			return;
+		startTime = System.nanoTime();
+		previousTime = startTime;
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "progress-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops reporting and logs the final progress
+	 */
+	@Override
+	public void close()
+	{
+		if (scheduler != null)
+		{
+			scheduler.shutdownNow();
+			report();
+			scheduler = null;
+		}
+	}
+
+	private synchronized void report()
+	{
+		try
+		{
+			long now = System.nanoTime();
+			double seconds = Math.max((now - previousTime) / 1e9d, 1e-3d);
+			double elapsedSeconds = Math.max((now - startTime) / 1e9d, 1e-3d);
+			previousTime = now;
+			StringBuilder tables = new StringBuilder();
+			long rows = 0L;
+			long bytes = 0L;
+			long totalRows = 0L;
+			long intervalRows = 0L;
+			long intervalBytes = 0L;
+			for (AbstractTableWorker worker : workers)
+			{
+				TableMetrics table = metrics.getTable(worker.table);
+				long tableRows = table.getRows();
+				long tableBytes = table.getBytes();
+				long[] previous = previousCounts.getOrDefault(worker.table, new long[2]);
+				previousCounts.put(worker.table, new long[] { tableRows, tableBytes });
+				rows += tableRows;
+				bytes += tableBytes;
+				totalRows += worker.getTotalRecordCount();
+				intervalRows += tableRows - previous[0];
+				intervalBytes += tableBytes - previous[1];
+				// Only report tables that have a part worker running or were
+				// copied during the last interval. All tables of a level are
+				// marked as running until the whole level has finished.
+				if (table.getActiveWorkers() > 0 || tableRows > previous[0])
+				{
+					Progress progress = createProgress(worker.table, tableRows, worker.getTotalRecordCount(),
+							tableRows - previous[0], tableBytes - previous[1], seconds, elapsedSeconds);
+					append(tables, progress);
+				}
+			}
+			Progress total = createProgress(null, rows, totalRows, intervalRows, intervalBytes, seconds,
+					elapsedSeconds);
+			log.info(format(total, tables));
+		}
+		catch (RuntimeException e)
+		{
+			log.warning("Could not report progress: " + e.getMessage());
+		}
+	}
+
+	private Progress createProgress(String table, long rows, long totalRows, long intervalRows, long intervalBytes,
+			double seconds, double elapsedSeconds)
+	{
+		long remaining = Math.max(totalRows - rows, 0L);
+		double averageRowsPerSecond = rows / elapsedSeconds;
+		long eta = -1L;
+		if (remaining == 0L)
+			eta = 0L;
+		else if (averageRowsPerSecond > 0d)
+			eta = (long) (remaining / averageRowsPerSecond);
+		return new Progress(table, rows, totalRows, intervalRows / seconds,
+				intervalBytes / BYTES_PER_MEGABYTE / seconds, eta);
+	}
+
+	private void append(StringBuilder tables, Progress progress)
+	{
+		if (format == ProgressFormat.Json)
+		{
+			if (tables.length() > 0)
+				tables.append(",");
+			tables.append(toJson(progress));
+		}
+		else
+		{
+			tables.append("\n  ").append(progress.table).append(": ").append(toText(progress));
+		}
+	}
+
+	private String format(Progress total, StringBuilder tables)
+	{
+		if (format == ProgressFormat.Json)
+		{
+			String json = toJson(total);
+			return json.substring(0, json.length() - 1) + ",\"tables\":[" + tables + "]}";
+		}
+		return "Progress: " + toText(total) + tables;
+	}
+
+	private String toText(Progress progress)
+	{
+		return String.format(Locale.ROOT, "%.1f%% (%d of %d records), %.0f rows/s, %.2f MB/s, ETA %s",
+				progress.getPercent(), progress.rows, progress.totalRows, progress.rowsPerSecond,
+				progress.megabytesPerSecond, formatDuration(progress.etaSeconds));
+	}
+
+	private String toJson(Progress progress)
+	{
+		StringBuilder res = new StringBuilder("{");
+		if (progress.table != null)
+			res.append("\"table\":\"").append(escape(progress.table)).append("\",");
+		res.append(String.format(Locale.ROOT,
+				"\"percent\":%.2f,\"rows\":%d,\"totalRows\":%d,\"rowsPerSecond\":%.1f,\"megabytesPerSecond\":%.3f,\"etaSeconds\":%s",
+				progress.getPercent(), progress.rows, progress.totalRows, progress.rowsPerSecond,
+				progress.megabytesPerSecond, progress.etaSeconds < 0L ? "null" : String.valueOf(progress.etaSeconds)));
+		return res.append("}").toString();
+	}
+
+	private static String formatDuration(long seconds)
+	{
+		if (seconds < 0L)
+			return "unknown";
+		return String.format(Locale.ROOT, "%02d:%02d:%02d", seconds / 3600L, (seconds / 60L) % 60L, seconds % 60L);
+	}
+
+	private static String escape(String value)
+	{
+		StringBuilder res = new StringBuilder(value.length());
+		for (int index = 0; index < value.length(); index++)
+		{
+			char c = value.charAt(index);
+			if (c == '"' || c == '\\')
+				res.append('\\').append(c);
+			else if (c < 0x20)
+				res.append(String.format("\\u%04x", (int) c));
+			else
+				res.append(c);
+		}
+		return res.toString();
+	}
+
+}
@@ -0,0 +1,199 @@
+package nl.topicus.spanner.converter.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.google.cloud.ByteArray;
+import com.google.cloud.Date;
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.KeySet;
+import com.google.cloud.spanner.KeyRange.Endpoint;
+import com.google.cloud.spanner.Mutation;
+
+import nl.topicus.jdbc.ICloudSpannerConnection;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+
+/**
+ * Deletes all records in a key range of a table in chunks of at most
+ * chunkSize records. The end key of each chunk is the key chunkSize records
+ * after its begin key, which is found with one query that only reads primary
+ * key values. Each chunk is then deleted with one statement, or with one key
+ * range delete mutation for Cloud Spanner destinations, and committed, so no
+ * transaction exceeds the mutation limit of Cloud Spanner.
+ */
+class RangeDeleteWorker extends AbstractTablePartWorker
+{
+	private static final Logger log = Logger.getLogger(RangeDeleteWorker.class.getName());
+
+	private static final String BOUNDARY_FORMAT = "SELECT $PRIMARY_KEY FROM $TABLE WHERE $WHERE_CLAUSE ORDER BY $PRIMARY_KEY LIMIT 1 OFFSET $OFFSET";
+
+	private static final String COUNT_FORMAT = "SELECT COUNT(*) FROM $TABLE WHERE $WHERE_CLAUSE";
+
+	private final Columns columns;
+
+	private final KeyRange keyRange;
+
+	private final long chunkSize;
+
+	private long recordCount;
+
+	RangeDeleteWorker(ConverterConfiguration config, String table, Columns columns, KeyRange keyRange,
+			long chunkSize)
+	{
+		super(config, table);
+		this.columns = columns;
+		this.keyRange = keyRange;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	protected void run() throws SQLException
+	{
+		try (Connection destination = destinationPool.getConnection())
+		{
+			log.fine(sourceTable + ": Starting deleting range " + keyRange + " in chunks of " + chunkSize + " records");
+			destination.setAutoCommit(false);
+			boolean rowValue = config.getDestinationDatabaseType().supportsRowValueComparison();
+			boolean mutations = destination.isWrapperFor(ICloudSpannerConnection.class);
+			List<Object> beginKey = keyRange.beginKey;
+			while (true)
+			{
+				long startTime = System.nanoTime();
+				List<Object> endKey = findChunkEnd(destination, beginKey, rowValue);
+				KeyRange chunk = new KeyRange(beginKey, endKey == null ? keyRange.endKey : endKey);
+				long records = endKey == null ? count(destination, chunk, rowValue) : chunkSize;
+				if (records > 0L)
+				{
+					if (mutations)
+						delete(destination.unwrap(ICloudSpannerConnection.class), chunk);
+					else
+						delete(destination, chunk, rowValue);
+					destination.commit();
+					recordCount += records;
+					getMetrics().committed(records, 0L, System.nanoTime() - startTime);
+				}
+				log.fine(sourceTable + ": Records deleted so far: " + recordCount);
+				if (endKey == null)
+					break;
+				beginKey = endKey;
+			}
+		}
+		log.fine(sourceTable + ": Finished deleting range " + keyRange);
+	}
+
+	/**
+	 * @return The key chunkSize records after the given begin key, or
+	 *         <code>null</code> if there are no more than chunkSize records
+	 *         left in the range
+	 */
+	private List<Object> findChunkEnd(Connection destination, List<Object> beginKey, boolean rowValue)
+			throws SQLException
+	{
+		KeyRange remaining = new KeyRange(beginKey, keyRange.endKey);
+		String select = BOUNDARY_FORMAT.replace("$PRIMARY_KEY", columns.getPrimaryKeyColumns());
+		select = select.replace("$TABLE", sourceTable);
+		select = select.replace("$WHERE_CLAUSE", remaining.getWhereClause(columns, false, rowValue));
+		select = select.replace("$OFFSET", String.valueOf(chunkSize));
+		try (PreparedStatement statement = destination.prepareStatement(select))
+		{
+			remaining.bind(statement, 1, null, rowValue);
+			try (ResultSet rs = statement.executeQuery())
+			{
+				if (!rs.next())
+					return null;
+				List<Object> key = new ArrayList<>(columns.getPrimaryKeyCols().size());
+				for (int i = 1; i <= columns.getPrimaryKeyCols().size(); i++)
+					key.add(rs.getObject(i));
+				return key;
+			}
+		}
+	}
+
+	private long count(Connection destination, KeyRange chunk, boolean rowValue) throws SQLException
+	{
+		String select = COUNT_FORMAT.replace("$TABLE", sourceTable);
+		select = select.replace("$WHERE_CLAUSE", chunk.getWhereClause(columns, false, rowValue));
+		try (PreparedStatement statement = destination.prepareStatement(select))
+		{
+			chunk.bind(statement, 1, null, rowValue);
+			try (ResultSet rs = statement.executeQuery())
+			{
+				return rs.next() ? rs.getLong(1) : 0L;
+			}
+		}
+	}
+
+	private void delete(Connection destination, KeyRange chunk, boolean rowValue) throws SQLException
+	{
+		String sql = "DELETE FROM " + sourceTable + " WHERE " + chunk.getWhereClause(columns, false, rowValue);
+		try (PreparedStatement statement = destination.prepareStatement(sql))
+		{
+			chunk.bind(statement, 1, null, rowValue);
+			statement.executeUpdate();
+		}
+	}
+
+	private void delete(ICloudSpannerConnection destination, KeyRange chunk) throws SQLException
+	{
+		KeySet keys;
+		if (chunk.beginKey == null && chunk.endKey == null)
+			keys = KeySet.all();
+		else
+			keys = KeySet.range(com.google.cloud.spanner.KeyRange.newBuilder().setStart(toKey(chunk.beginKey))
+					.setStartType(Endpoint.CLOSED).setEnd(toKey(chunk.endKey))
+					.setEndType(chunk.endKey == null ? Endpoint.CLOSED : Endpoint.OPEN).build());
+		destination.getTransaction().buffer(Mutation.delete(sourceTable, keys));
+	}
+
+	/**
+	 * @return A Cloud Spanner key for the given values, or an empty key if
+	 *         values is <code>null</code>. An empty key is a prefix of all
+	 *         keys, so a closed range endpoint with an empty key includes all
+	 *         keys from the start or to the end of the table.
+	 */
+	private static Key toKey(List<Object> values)
+	{
+		if (values == null)
+			return Key.of();
+		Key.Builder builder = Key.newBuilder();
+		for (Object value : values)
+		{
+			if (value instanceof byte[])
+				builder.append(ByteArray.copyFrom((byte[]) value));
+			else if (value instanceof java.sql.Timestamp)
+				builder.append(Timestamp.of((java.sql.Timestamp) value));
+			else if (value instanceof java.sql.Date)
+				builder.append(toDate((java.sql.Date) value));
+			else if (value instanceof Short || value instanceof Byte)
+				builder.append(((Number) value).longValue());
+			else
+				builder.appendObject(value);
+		}
+		return builder.build();
+	}
+
+	@SuppressWarnings("deprecation")
+	private static Date toDate(java.sql.Date date)
+	{
+		return Date.fromYearMonthDay(date.getYear() + 1900, date.getMonth() + 1, date.getDate());
+	}
+
+	@Override
+	protected long getRecordCount()
+	{
+		return recordCount;
+	}
+
+	@Override
+	protected long getByteCount()
+	{
+		return 0;
+	}
+
+}
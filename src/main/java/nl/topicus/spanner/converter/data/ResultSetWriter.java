@@ -0,0 +1,28 @@
+package nl.topicus.spanner.converter.data;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A {@link DestinationWriter} that can copy the current record of a source
+ * result set directly to the destination, without reading the values of the
+ * record into an array of objects first
+ */
+interface ResultSetWriter extends DestinationWriter
+{
+	/**
+	 * Writes the current record of the result set to the destination. The
+	 * columns of the result set must be in the order of the insert columns.
+	 * 
+	 * @return The size of the record in bytes
+	 */
+	long write(ResultSet rs) throws SQLException;
+
+	/**
+	 * @param column
+	 *            The index of the column (0-based)
+	 * @return The value of the given column of the last record that was
+	 *         written with {@link #write(ResultSet)}
+	 */
+	Object getLastValue(int column);
+}
@@ -0,0 +1,231 @@
+package nl.topicus.spanner.converter.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+
+/**
+ * Decouples reading records from the source from writing them to the
+ * destination. The thread of the part worker reads the records into batches
+ * and puts these on a bounded queue. One or more writer threads, each with its
+ * own destination connection, take the batches from the queue and write and
+ * commit them. The reader blocks when the queue is full, so a slow
+ * destination will slow down reading instead of filling up memory.
+ */
+final class RowPipeline
+{
+	private static final Logger log = Logger.getLogger(RowPipeline.class.getName());
+
+	/**
+	 * Marker that tells a writer that no more batches will follow
+	 */
+	private static final Batch END = new Batch(-1L, new ArrayList<>(0));
+
+	private static final class Batch
+	{
+		private final long sequence;
+
+		private final List<Object[]> rows;
+
+		private Batch(long sequence, List<Object[]> rows)
+		{
+			this.sequence = sequence;
+			this.rows = rows;
+		}
+	}
+
+	private final AbstractTablePartWorker worker;
+
+	private final ConverterConfiguration config;
+
+	private final int numberOfWriters;
+
+	private final BlockingQueue<Batch> queue;
+
+	private final ExecutorService writers;
+
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+	private List<Object[]> currentBatch;
+
+	private long nextSequence;
+
+	/**
+	 * Batches that have been committed before one or more batches that were
+	 * read earlier
+	 */
+	private final Map<Long, Batch> committedOutOfOrder = new HashMap<>();
+
+	private long nextCommittedSequence;
+
+	private long committedRecords;
+
+	RowPipeline(AbstractTablePartWorker worker)
+	{
+		this.worker = worker;
+		this.config = worker.config;
+		this.numberOfWriters = config.getNumberOfPipelineWriters();
+		this.queue = new ArrayBlockingQueue<>(config.getPipelineQueueCapacity());
+		// The writer threads count against DataConverter.maxConcurrentWorkers
+		this.writers = Executors.newFixedThreadPool(numberOfWriters);
+		this.currentBatch = new ArrayList<>(worker.getBatchSize());
+		for (int i = 0; i < numberOfWriters; i++)
+		{
+			writers.execute(this::write);
+		}
+		writers.shutdown();
+	}
+
+	/**
+	 * Adds a record to the current batch, and hands over the batch to the
+	 * writers when it is full
+	 */
+	void add(Object[] row) throws SQLException
+	{
+		currentBatch.add(row);
+		if (currentBatch.size() >= worker.getBatchSize())
+		{
+			put(new Batch(nextSequence++, currentBatch));
+			currentBatch = new ArrayList<>(worker.getBatchSize());
+		}
+	}
+
+	/**
+	 * Hands over the last batch to the writers and waits until all batches
+	 * have been written and committed
+	 */
+	void finish() throws SQLException
+	{
+		if (!currentBatch.isEmpty())
+			put(new Batch(nextSequence++, currentBatch));
+		currentBatch = new ArrayList<>(0);
+		for (int i = 0; i < numberOfWriters; i++)
+		{
+			put(END);
+		}
+		try
+		{
+			while (!writers.awaitTermination(1L, TimeUnit.SECONDS))
+			{
+				checkFailure();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for writers to finish", e);
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Stops all writers. Batches that have not yet been written are discarded.
+	 */
+	void close()
+	{
+		List<Batch> discarded = new ArrayList<>();
+		queue.drainTo(discarded);
+		for (Batch batch : discarded)
+		{
+			if (batch != END)
+				worker.getMetrics().batchDequeued();
+		}
+		writers.shutdownNow();
+	}
+
+	private void put(Batch batch) throws SQLException
+	{
+		try
+		{
+			while (!queue.offer(batch, 1L, TimeUnit.SECONDS))
+			{
+				checkFailure();
+			}
+			if (batch != END)
+				worker.getMetrics().batchQueued();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for writers", e);
+		}
+	}
+
+	/**
+	 * Reports the committed records to the worker once all batches that were
+	 * read before the given batch have also been committed
+	 */
+	private synchronized void committed(Batch batch)
+	{
+		committedOutOfOrder.put(batch.sequence, batch);
+		Batch last = null;
+		Batch next;
+		while ((next = committedOutOfOrder.remove(nextCommittedSequence)) != null)
+		{
+			last = next;
+			committedRecords += next.rows.size();
+			nextCommittedSequence++;
+		}
+		if (last != null)
+			worker.committed(worker.getKey(last.rows.get(last.rows.size() - 1)), committedRecords);
+	}
+
+	private void checkFailure() throws SQLException
+	{
+		Exception e = failure.get();
+		if (e instanceof SQLException)
+			throw (SQLException) e;
+		if (e != null)
+			throw new SQLException("Writing to the destination failed: " + e.getMessage(), e);
+	}
+
+	private void write()
+	{
+		try (Connection destination = worker.destinationPool.getConnection())
+		{
+			destination.setAutoCommit(false);
+			try (DestinationWriter writer = worker.createDestinationWriter(destination))
+			{
+				while (failure.get() == null)
+				{
+					Batch batch = queue.take();
+					if (batch == END)
+						break;
+					worker.getMetrics().batchDequeued();
+					long bytes = 0;
+					for (Object[] row : batch.rows)
+					{
+						bytes += writer.write(row);
+					}
+					long startTime = System.nanoTime();
+					writer.commit();
+					worker.batchCommitted(batch.rows.size(), bytes, System.nanoTime() - startTime);
+					worker.addCopied(batch.rows.size(), bytes);
+					committed(batch);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (Exception e)
+		{
+			log.severe(worker.sourceTable + ": Writer failed: " + e.getMessage());
+			failure.compareAndSet(null, e);
+		}
+	}
+
+}
@@ -0,0 +1,362 @@
+package nl.topicus.spanner.converter.data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.SplitMethod;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+
+/**
+ * Splits a table in consecutive key ranges with approximately the same number
+ * of records, without reading the table in primary key order once for each
+ * boundary. The boundaries are determined with one of these methods:
+ * <ul>
+ * <li>Histogram: the histogram bounds of the statistics of the first primary
+ * key column in <code>pg_stats</code>. Only for PostgreSQL tables with a
+ * primary key of one integer or character column.</li>
+ * <li>Sample: every n-th key of a random sample of the table that is read with
+ * <code>TABLESAMPLE</code> and sorted by the database.</li>
+ * <li>MinMax: equal intervals between the minimum and maximum value of a
+ * primary key of one integer column. The ranges are only balanced if the keys
+ * are evenly distributed.</li>
+ * <li>Offset: the key at each boundary offset, which needs one ordered scan of
+ * the table for each boundary.</li>
+ * </ul>
+ * The Auto method uses the first of Histogram, Sample and Offset that gives a
+ * result for the table. If a method cannot split the table, the Offset method
+ * is used.
+ *
+ * The first range has no begin key and the last range has no end key, so
+ * records that are inserted after the ranges have been determined are also
+ * included.
+ */
+final class SplitPlanner
+{
+	private static final Logger log = Logger.getLogger(SplitPlanner.class.getName());
+
+	/**
+	 * The number of sampled keys for each range
+	 */
+	private static final int SAMPLES_PER_RANGE = 100;
+
+	private static final int MAX_SAMPLES = 100000;
+
+	private static final String SAMPLE_FORMAT = "SELECT $PRIMARY_KEY FROM $TABLE $SAMPLE ORDER BY $PRIMARY_KEY";
+
+	private static final String MIN_MAX_FORMAT = "SELECT MIN($PRIMARY_KEY), MAX($PRIMARY_KEY) FROM $TABLE";
+
+	private static final String HISTOGRAM_QUERY = "SELECT histogram_bounds::text FROM pg_stats WHERE schemaname = ? AND tablename = ? AND attname = ?";
+
+	private final ConverterConfiguration config;
+
+	private final DatabaseType databaseType;
+
+	/**
+	 * @param databaseType
+	 *            The type of the database that contains the table
+	 */
+	SplitPlanner(ConverterConfiguration config, DatabaseType databaseType)
+	{
+		this.config = config;
+		this.databaseType = databaseType;
+	}
+
+	/**
+	 * Splits the table in at most numberOfRanges key ranges
+	 *
+	 * @param connection
+	 *            The connection to the database that contains the table
+	 * @param tableSpec
+	 *            The qualified name of the table
+	 * @param table
+	 *            The name of the table
+	 * @param columns
+	 *            The columns of the table
+	 * @param totalRecordCount
+	 *            The number of records in the table
+	 * @param numberOfRanges
+	 *            The number of ranges to create
+	 * @return The key ranges in key order. Fewer ranges than requested are
+	 *         returned if the table could not be split in more ranges.
+	 */
+	List<KeyRange> plan(Connection connection, String tableSpec, String table, Columns columns,
+			long totalRecordCount, int numberOfRanges) throws SQLException
+	{
+		if (numberOfRanges <= 1)
+			return Collections.singletonList(new KeyRange(null, null));
+		long startTime = System.currentTimeMillis();
+		SplitMethod method = config.getSplitMethod();
+		List<List<Object>> boundaries = null;
+		if (method == SplitMethod.Auto || method == SplitMethod.Histogram)
+		{
+			boundaries = getHistogramBoundaries(connection, table, columns, numberOfRanges);
+			method = SplitMethod.Histogram;
+		}
+		if (boundaries == null
+				&& (config.getSplitMethod() == SplitMethod.Auto || config.getSplitMethod() == SplitMethod.Sample))
+		{
+			boundaries = getSampleBoundaries(connection, tableSpec, columns, totalRecordCount, numberOfRanges);
+			method = SplitMethod.Sample;
+		}
+		if (boundaries == null && config.getSplitMethod() == SplitMethod.MinMax)
+		{
+			boundaries = getMinMaxBoundaries(connection, tableSpec, columns, numberOfRanges);
+			method = SplitMethod.MinMax;
+		}
+		if (boundaries == null)
+		{
+			boundaries = getOffsetBoundaries(connection, tableSpec, columns, totalRecordCount, numberOfRanges);
+			method = SplitMethod.Offset;
+		}
+		List<KeyRange> res = new ArrayList<>(boundaries.size() + 1);
+		List<Object> beginKey = null;
+		for (List<Object> endKey : boundaries)
+		{
+			res.add(new KeyRange(beginKey, endKey));
+			beginKey = endKey;
+		}
+		res.add(new KeyRange(beginKey, null));
+		log.info("Split table " + tableSpec + " in " + res.size() + " key ranges with method " + method + " in "
+				+ (System.currentTimeMillis() - startTime) + " ms");
+		return res;
+	}
+
+	/**
+	 * @return The boundaries from the histogram of the primary key column in
+	 *         the PostgreSQL statistics, or <code>null</code> if there are no
+	 *         statistics or the histogram cannot be used
+	 */
+	private List<List<Object>> getHistogramBoundaries(Connection connection, String table, Columns columns,
+			int numberOfRanges)
+	{
+		if (databaseType != DatabaseType.PostgreSQL || columns.getPrimaryKeyCols().size() != 1)
+			return null;
+		String column = columns.getPrimaryKeyCols().get(0);
+		Integer type = columns.getColumnType(column);
+		if (type == null || !(isInteger(type) || isCharacter(type)))
+			return null;
+		String schema = config.getSchema() == null ? databaseType.getDefaultSchemaName() : config.getSchema();
+		try (PreparedStatement statement = connection.prepareStatement(HISTOGRAM_QUERY))
+		{
+			statement.setString(1, schema);
+			statement.setString(2, table);
+			statement.setString(3, column);
+			try (ResultSet rs = statement.executeQuery())
+			{
+				if (!rs.next() || rs.getString(1) == null)
+					return null;
+				List<String> bounds = parseArray(rs.getString(1));
+				// n bounds divide the values in n - 1 buckets with the same
+				// number of values
+				if (bounds.size() < 2)
+					return null;
+				List<List<Object>> res = new ArrayList<>(numberOfRanges - 1);
+				for (int range = 1; range < numberOfRanges; range++)
+				{
+					String bound = bounds.get((int) ((long) range * (bounds.size() - 1) / numberOfRanges));
+					Object value = isInteger(type) ? (Object) Long.valueOf(bound) : bound;
+					addBoundary(res, Collections.singletonList(value));
+				}
+				return res;
+			}
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			log.fine("Could not read histogram of " + table + "." + column + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return Every n-th key of a sample of the table, or <code>null</code> if
+	 *         the database does not support sampling or the sample was too
+	 *         small
+	 */
+	private List<List<Object>> getSampleBoundaries(Connection connection, String tableSpec, Columns columns,
+			long totalRecordCount, int numberOfRanges)
+	{
+		if (totalRecordCount <= 0L)
+			return null;
+		long samples = Math.min((long) numberOfRanges * SAMPLES_PER_RANGE, MAX_SAMPLES);
+		double percent = Math.min(100d, Math.max(samples * 100d / totalRecordCount, 0.0001d));
+		String select = SAMPLE_FORMAT.replace("$PRIMARY_KEY", columns.getPrimaryKeyColumns());
+		select = select.replace("$TABLE", tableSpec);
+		select = select.replace("$SAMPLE", databaseType.getTableSampleClause(percent));
+		List<List<Object>> keys = new ArrayList<>();
+		try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(select))
+		{
+			while (rs.next())
+				keys.add(readKey(rs, columns));
+		}
+		catch (SQLException e)
+		{
+			log.fine("Could not sample " + tableSpec + ": " + e.getMessage());
+			return null;
+		}
+		if (keys.size() < numberOfRanges)
+			return null;
+		List<List<Object>> res = new ArrayList<>(numberOfRanges - 1);
+		for (int range = 1; range < numberOfRanges; range++)
+		{
+			addBoundary(res, keys.get((int) ((long) range * keys.size() / numberOfRanges)));
+		}
+		return res;
+	}
+
+	/**
+	 * @return Boundaries at equal intervals between the minimum and maximum
+	 *         key, or <code>null</code> if the primary key is not one integer
+	 *         column
+	 */
+	private List<List<Object>> getMinMaxBoundaries(Connection connection, String tableSpec, Columns columns,
+			int numberOfRanges) throws SQLException
+	{
+		if (columns.getPrimaryKeyCols().size() != 1)
+			return null;
+		Integer type = columns.getColumnType(columns.getPrimaryKeyCols().get(0));
+		if (type == null || !isInteger(type))
+			return null;
+		String select = MIN_MAX_FORMAT.replace("$PRIMARY_KEY", columns.getPrimaryKeyColumns());
+		select = select.replace("$TABLE", tableSpec);
+		try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(select))
+		{
+			if (!rs.next())
+				return null;
+			long min = rs.getLong(1);
+			if (rs.wasNull())
+				return null;
+			long max = rs.getLong(2);
+			BigDecimal width = BigDecimal.valueOf(max).subtract(BigDecimal.valueOf(min));
+			List<List<Object>> res = new ArrayList<>(numberOfRanges - 1);
+			for (int range = 1; range < numberOfRanges; range++)
+			{
+				long value = width.multiply(BigDecimal.valueOf(range))
+						.divide(BigDecimal.valueOf(numberOfRanges), RoundingMode.DOWN).longValue() + min;
+				addBoundary(res, Collections.singletonList(Long.valueOf(value)));
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * @return The keys at each boundary offset
+	 */
+	private List<List<Object>> getOffsetBoundaries(Connection connection, String tableSpec, Columns columns,
+			long totalRecordCount, int numberOfRanges) throws SQLException
+	{
+		long numberOfRecordsPerRange = totalRecordCount / numberOfRanges;
+		if (totalRecordCount % numberOfRanges > 0)
+			numberOfRecordsPerRange++;
+		List<List<Object>> res = new ArrayList<>(numberOfRanges - 1);
+		for (int range = 1; range < numberOfRanges; range++)
+		{
+			List<Object> key = getKeyAtOffset(connection, tableSpec, columns, range * numberOfRecordsPerRange);
+			if (key == null)
+				break;
+			addBoundary(res, key);
+		}
+		return res;
+	}
+
+	private List<Object> getKeyAtOffset(Connection connection, String tableSpec, Columns columns, long offset)
+			throws SQLException
+	{
+		String select = DataCopier.KEY_AT_OFFSET_FORMAT.replace("$PRIMARY_KEY", columns.getPrimaryKeyColumns());
+		select = select.replace("$TABLE", tableSpec);
+		select = select.replace("$OFFSET", String.valueOf(offset));
+		try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(select))
+		{
+			if (rs.next())
+				return readKey(rs, columns);
+		}
+		return null;
+	}
+
+	private static List<Object> readKey(ResultSet rs, Columns columns) throws SQLException
+	{
+		List<Object> key = new ArrayList<>(columns.getPrimaryKeyCols().size());
+		for (int i = 1; i <= columns.getPrimaryKeyCols().size(); i++)
+		{
+			key.add(rs.getObject(i));
+		}
+		return key;
+	}
+
+	/**
+	 * Adds a boundary unless it is equal to the previous boundary, which
+	 * happens when many records have the same value in the first key column
+	 */
+	private static void addBoundary(List<List<Object>> boundaries, List<Object> key)
+	{
+		if (boundaries.isEmpty() || !boundaries.get(boundaries.size() - 1).equals(key))
+			boundaries.add(key);
+	}
+
+	private static boolean isInteger(int type)
+	{
+		return type == Types.BIGINT || type == Types.INTEGER || type == Types.SMALLINT || type == Types.TINYINT;
+	}
+
+	private static boolean isCharacter(int type)
+	{
+		return type == Types.CHAR || type == Types.VARCHAR || type == Types.NVARCHAR || type == Types.LONGVARCHAR;
+	}
+
+	/**
+	 * Parses the text representation of a PostgreSQL array, for example
+	 * <code>{1,2,3}</code> or <code>{"a b",c}</code>
+	 */
+	private static List<String> parseArray(String array)
+	{
+		List<String> res = new ArrayList<>();
+		if (array.length() < 2)
+			return res;
+		StringBuilder element = new StringBuilder();
+		boolean quoted = false;
+		boolean inElement = false;
+		for (int index = 1; index < array.length() - 1; index++)
+		{
+			char c = array.charAt(index);
+			if (quoted)
+			{
+				if (c == '\\')
+					element.append(array.charAt(++index));
+				else if (c == '"')
+					quoted = false;
+				else
+					element.append(c);
+			}
+			else if (c == '"')
+			{
+				quoted = true;
+				inElement = true;
+			}
+			else if (c == ',')
+			{
+				res.add(element.toString());
+				element.setLength(0);
+				inElement = false;
+			}
+			else
+			{
+				element.append(c);
+				inElement = true;
+			}
+		}
+		if (inElement || !res.isEmpty())
+			res.add(element.toString());
+		return res;
+	}
+
+}
@@ -1,118 +1,228 @@
-package nl.topicus.spanner.converter.data;
-
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.logging.Logger;
-
-import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
-
-public class TableDeleter extends AbstractTableWorker
-{
-	private static final Logger log = Logger.getLogger(TableDeleter.class.getName());
-
-	private long totalRecordCount;
-
-	TableDeleter(String table, ConverterConfiguration config)
-	{
-		super(table, config);
-	}
-
-	@Override
-	protected List<AbstractTablePartWorker> prepareWorkers(Connection source, Connection destination)
-			throws SQLException
-	{
-		totalRecordCount = converterUtils.getDestinationRecordCount(destination, table);
-		List<AbstractTablePartWorker> workers;
-		if (totalRecordCount > 0)
-		{
-			if (totalRecordCount >= 10000)
-			{
-				workers = createWorkers(source, destination);
-			}
-			else
-			{
-				workers = new ArrayList<>(1);
-				workers.add(new SingleDeleteWorker(config, table, totalRecordCount));
-			}
-		}
-		else
-		{
-			workers = Collections.emptyList();
-		}
-
-		return workers;
-	}
-
-	private List<AbstractTablePartWorker> createWorkers(Connection source, Connection destination) throws SQLException
-	{
-		Columns columns = converterUtils.getColumns(destination, config.getCatalog(), config.getSchema(), table, true);
-
-		String selectFormat = "SELECT $COLUMNS FROM $TABLE ORDER BY $PRIMARY_KEY LIMIT 1 OFFSET $OFFSET";
-		int numberOfWorkers = config.getMaxNumberOfWorkers();
-		int batchSize = converterUtils.calculateActualBatchSize(1, destination, config.getCatalog(), config.getSchema(),
-				table);
-		long numberOfRecordsPerWorker = totalRecordCount / numberOfWorkers;
-		log.info("Deleting: Number of workers: " + numberOfWorkers + "; Batch size: " + batchSize
-				+ "; Number of records per worker: " + numberOfRecordsPerWorker);
-		long currentOffset = 0;
-		List<AbstractTablePartWorker> workers = new ArrayList<>(numberOfWorkers);
-		for (int workerNumber = 0; workerNumber < numberOfWorkers; workerNumber++)
-		{
-			List<Object> beginKey = new ArrayList<>(columns.getPrimaryKeyCols().size());
-			List<Object> endKey = new ArrayList<>(columns.getPrimaryKeyCols().size());
-			long beginKeyOffset = currentOffset;
-			String select = selectFormat.replace("$COLUMNS", columns.getPrimaryKeyColumns(table + "."));
-			select = select.replace("$TABLE", table);
-			select = select.replace("$PRIMARY_KEY", columns.getPrimaryKeyColumns());
-			select = select.replace("$OFFSET", String.valueOf(beginKeyOffset));
-			try (ResultSet rsBeginKey = destination.createStatement().executeQuery(select))
-			{
-				while (rsBeginKey.next())
-				{
-					for (int i = 1; i <= columns.getPrimaryKeyCols().size(); i++)
-					{
-						beginKey.add(rsBeginKey.getObject(i));
-					}
-				}
-			}
-
-			long endKeyOffset = currentOffset + numberOfRecordsPerWorker - 1;
-			if (workerNumber == (numberOfWorkers - 1))
-				endKeyOffset = totalRecordCount - 1;
-			select = selectFormat.replace("$COLUMNS", columns.getPrimaryKeyColumns(table + "."));
-			select = select.replace("$TABLE", table);
-			select = select.replace("$PRIMARY_KEY", columns.getPrimaryKeyColumns());
-			select = select.replace("$OFFSET", String.valueOf(endKeyOffset));
-			try (ResultSet rsEndKey = destination.createStatement().executeQuery(select))
-			{
-				while (rsEndKey.next())
-				{
-					for (int i = 1; i <= columns.getPrimaryKeyCols().size(); i++)
-					{
-						endKey.add(rsEndKey.getObject(i));
-					}
-				}
-			}
-
-			long workerRecordCount = Math.max(numberOfRecordsPerWorker, totalRecordCount - currentOffset);
-			DeleteWorker worker = new DeleteWorker(config, table, columns, beginKey, endKey, workerRecordCount,
-					batchSize);
-			workers.add(worker);
-			currentOffset = currentOffset + numberOfRecordsPerWorker;
-		}
-		destination.commit();
-
-		return workers;
-	}
-
-	@Override
-	public long getTotalRecordCount()
-	{
-		return totalRecordCount;
-	}
-
-}
+package nl.topicus.spanner.converter.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.DeleteMode;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+import nl.topicus.spanner.converter.ddl.CloudSpannerTableDefinition;
+import nl.topicus.spanner.converter.util.SchemaCatalog;
+
+public class TableDeleter extends AbstractTableWorker
+{
+	private static final Logger log = Logger.getLogger(TableDeleter.class.getName());
+
+	/**
+	 * The number of records to delete in one statement when there is no limit
+	 */
+	private static final long DEFAULT_CHUNK_SIZE = 100000L;
+
+	/**
+	 * Tables with fewer records are deleted by one worker
+	 */
+	private static final long SMALL_TABLE_RECORD_COUNT = 10000L;
+
+	private long totalRecordCount;
+
+	/**
+	 * True if the table should be emptied with a TRUNCATE statement instead of
+	 * by the workers of this deleter
+	 */
+	private boolean truncate;
+
+	/**
+	 * False if truncating the table failed
+	 */
+	private boolean truncateAllowed = true;
+
+	/**
+	 * The statements that empty the table by dropping and recreating it, or
+	 * <code>null</code> if the table should be emptied by the workers of this
+	 * deleter
+	 */
+	private List<String> recreateStatements;
+
+	/**
+	 * False if recreating the table failed
+	 */
+	private boolean recreateAllowed = true;
+
+	TableDeleter(String table, ConverterConfiguration config, SchemaCatalog destinationCatalog)
+	{
+		super(table, config, destinationCatalog);
+	}
+
+	@Override
+	protected List<AbstractTablePartWorker> prepareWorkers(Connection source, Connection destination)
+			throws SQLException
+	{
+		boolean auto = config.getDeleteMode() == DeleteMode.Auto;
+		recreateStatements = null;
+		DatabaseType destinationType = config.getDestinationDatabaseType();
+		boolean truncatable = auto && truncateAllowed && destinationType == DatabaseType.PostgreSQL;
+		if (truncatable)
+		{
+			// Use the statistics of the table to prevent counting the records
+			// of large tables that will be truncated anyway
+			long estimate = getEstimatedRecordCount(destination);
+			if (estimate > 0 && estimate >= config.getTruncateMinRecords())
+			{
+				totalRecordCount = estimate;
+				truncate = true;
+				return Collections.emptyList();
+			}
+		}
+		totalRecordCount = converterUtils.getDestinationRecordCount(destination, table);
+		List<AbstractTablePartWorker> workers;
+		if (totalRecordCount > 0)
+		{
+			if (truncatable && totalRecordCount >= config.getTruncateMinRecords())
+			{
+				truncate = true;
+				workers = Collections.emptyList();
+			}
+			else if (auto && recreateAllowed && destinationType == DatabaseType.CloudSpanner
+					&& totalRecordCount >= config.getRecreateMinRecords()
+					&& (recreateStatements = CloudSpannerTableDefinition.getRecreateStatements(destination,
+							table)) != null)
+			{
+				workers = Collections.emptyList();
+			}
+			// Small tables are deleted with one statement, unless the delete
+			// must be split to stay below the limit of one commit
+			else if (totalRecordCount >= SMALL_TABLE_RECORD_COUNT || config.getDeleteMode() != DeleteMode.Row)
+			{
+				workers = createWorkers(source, destination);
+			}
+			else
+			{
+				workers = new ArrayList<>(1);
+				workers.add(new SingleDeleteWorker(config, table, totalRecordCount));
+			}
+		}
+		else
+		{
+			workers = Collections.emptyList();
+		}
+
+		return workers;
+	}
+
+	/**
+	 * @return The number of records of the table according to the statistics
+	 *         of PostgreSQL, or -1 if there are no statistics
+	 */
+	private long getEstimatedRecordCount(Connection destination) throws SQLException
+	{
+		String sql = "SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?)";
+		try (PreparedStatement statement = destination.prepareStatement(sql))
+		{
+			statement.setString(1, converterUtils.getTableSpec(null, config.getSchema(), table));
+			try (ResultSet rs = statement.executeQuery())
+			{
+				if (rs.next())
+					return rs.getLong(1);
+			}
+		}
+		return -1L;
+	}
+
+	/**
+	 * @return true if the table should be emptied with a TRUNCATE statement
+	 *         instead of by the workers of this deleter
+	 */
+	boolean isTruncate()
+	{
+		return truncate;
+	}
+
+	/**
+	 * Deletes the records with the workers of this deleter instead of with a
+	 * TRUNCATE statement
+	 */
+	void prepareWithoutTruncate(Connection source, Connection destination) throws SQLException
+	{
+		truncate = false;
+		truncateAllowed = false;
+		prepare(source, destination);
+	}
+
+	/**
+	 * @return The statements that empty the table by dropping and recreating
+	 *         it, or <code>null</code> if the table should be emptied by the
+	 *         workers of this deleter
+	 */
+	List<String> getRecreateStatements()
+	{
+		return recreateStatements;
+	}
+
+	/**
+	 * Deletes the records with the workers of this deleter instead of by
+	 * recreating the table
+	 */
+	void prepareWithoutRecreate(Connection source, Connection destination) throws SQLException
+	{
+		recreateAllowed = false;
+		prepare(source, destination);
+	}
+
+	private List<AbstractTablePartWorker> createWorkers(Connection source, Connection destination) throws SQLException
+	{
+		Columns columns = converterUtils.getColumns(destination, config.getCatalog(), config.getSchema(), table, true);
+
+		int batchSize = converterUtils.calculateActualBatchSize(1, destination, config.getCatalog(), config.getSchema(),
+				table);
+		List<KeyRange> keyRanges = new SplitPlanner(config, config.getDestinationDatabaseType()).plan(destination,
+				table, table, columns, totalRecordCount,
+				totalRecordCount >= SMALL_TABLE_RECORD_COUNT ? config.getMaxNumberOfWorkers() : 1);
+		int numberOfWorkers = keyRanges.size();
+		long numberOfRecordsPerWorker = totalRecordCount / numberOfWorkers;
+		log.info("Deleting: Number of workers: " + numberOfWorkers + "; Batch size: " + batchSize
+				+ "; Number of records per worker: " + numberOfRecordsPerWorker);
+		long chunkSize = getChunkSize(destination);
+		List<AbstractTablePartWorker> workers = new ArrayList<>(numberOfWorkers);
+		for (KeyRange keyRange : keyRanges)
+		{
+			if (config.getDeleteMode() != DeleteMode.Row)
+				workers.add(new RangeDeleteWorker(config, table, columns, keyRange, chunkSize));
+			else
+				workers.add(new DeleteWorker(config, table, columns, keyRange, numberOfRecordsPerWorker, batchSize));
+		}
+		destination.commit();
+
+		return workers;
+	}
+
+	/**
+	 * @return The number of records to delete in one statement in Range and
+	 *         Auto mode.
+	 *         For Cloud Spanner this is the number of records that can be
+	 *         deleted without exceeding the mutation limit of one commit,
+	 *         including the mutations of the indices of the table.
+	 */
+	private long getChunkSize(Connection destination) throws SQLException
+	{
+		long res = DEFAULT_CHUNK_SIZE;
+		if (config.getDestinationDatabaseType() == DatabaseType.CloudSpanner)
+			res = converterUtils.calculateMaxBatchSize(1, destination, config.getCatalog(), config.getSchema(), table);
+		Long max = config.getMaxRecordsInSingleDeleteStatement();
+		if (max != null)
+			res = Math.min(res, max.longValue());
+		return Math.max(res, 1L);
+	}
+
+	@Override
+	public long getTotalRecordCount()
+	{
+		return totalRecordCount;
+	}
+
+}
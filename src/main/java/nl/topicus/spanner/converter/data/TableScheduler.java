@@ -0,0 +1,165 @@
+package nl.topicus.spanner.converter.data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+
+/**
+ * Determines the order in which the part workers of all tables are submitted
+ * to the executor that is shared by all tables. The executor runs the part
+ * workers in the order they are submitted, so a large table that is submitted
+ * last determines the total time of the copy. The default policy therefore
+ * submits the tables with the most records first.
+ */
+abstract class TableScheduler
+{
+	private static final Logger log = Logger.getLogger(TableScheduler.class.getName());
+
+	/**
+	 * Orders tables by their number of records, largest first
+	 */
+	private static final Comparator<AbstractTableWorker> BY_SIZE = Comparator
+			.comparingLong(AbstractTableWorker::getTotalRecordCount).reversed();
+
+	static TableScheduler create(ConverterConfiguration config)
+	{
+		switch (config.getTableOrder())
+		{
+		case Priority:
+			return new PriorityScheduler(config.getTablePriority());
+		case RoundRobin:
+			return new RoundRobinScheduler();
+		case Catalog:
+			return new CatalogScheduler();
+		case Size:
+		default:
+			return new SizeScheduler();
+		}
+	}
+
+	/**
+	 * @return The given tables in the order their part workers should be
+	 *         submitted
+	 */
+	abstract List<AbstractTableWorker> order(List<? extends AbstractTableWorker> tables);
+
+	/**
+	 * Submits the part workers of all given tables to the executor. The tables
+	 * must have been started.
+	 */
+	void submit(List<? extends AbstractTableWorker> tables, ExecutorService service)
+	{
+		List<AbstractTableWorker> ordered = order(tables);
+		logOrder(ordered);
+		for (AbstractTableWorker table : ordered)
+		{
+			table.submitAll(service);
+		}
+	}
+
+	protected void logOrder(List<AbstractTableWorker> ordered)
+	{
+		StringBuilder res = new StringBuilder();
+		for (AbstractTableWorker table : ordered)
+		{
+			if (res.length() > 0)
+				res.append(", ");
+			res.append(table.table).append(" (").append(table.getTotalRecordCount()).append(")");
+		}
+		log.fine(getClass().getSimpleName() + " submits tables in order: " + res);
+	}
+
+	/**
+	 * Submits the tables with the most records first
+	 */
+	private static final class SizeScheduler extends TableScheduler
+	{
+		@Override
+		List<AbstractTableWorker> order(List<? extends AbstractTableWorker> tables)
+		{
+			List<AbstractTableWorker> res = new ArrayList<>(tables);
+			res.sort(BY_SIZE);
+			return res;
+		}
+	}
+
+	/**
+	 * Submits the tables in the given priority list first, in the order of the
+	 * list, and then all other tables with the most records first
+	 */
+	private static final class PriorityScheduler extends TableScheduler
+	{
+		private final List<String> priority;
+
+		private PriorityScheduler(List<String> priority)
+		{
+			this.priority = priority;
+		}
+
+		@Override
+		List<AbstractTableWorker> order(List<? extends AbstractTableWorker> tables)
+		{
+			List<AbstractTableWorker> res = new ArrayList<>(tables.size());
+			List<AbstractTableWorker> others = new ArrayList<>(tables);
+			for (String name : priority)
+			{
+				for (AbstractTableWorker table : tables)
+				{
+					if (table.table.equalsIgnoreCase(name) && others.remove(table))
+						res.add(table);
+				}
+			}
+			others.sort(BY_SIZE);
+			res.addAll(others);
+			return res;
+		}
+	}
+
+	/**
+	 * Submits one part worker of each table in turn, starting with the largest
+	 * table, so all tables make progress at the same time
+	 */
+	private static final class RoundRobinScheduler extends TableScheduler
+	{
+		@Override
+		List<AbstractTableWorker> order(List<? extends AbstractTableWorker> tables)
+		{
+			List<AbstractTableWorker> res = new ArrayList<>(tables);
+			res.sort(BY_SIZE);
+			return res;
+		}
+
+		@Override
+		void submit(List<? extends AbstractTableWorker> tables, ExecutorService service)
+		{
+			List<AbstractTableWorker> ordered = order(tables);
+			logOrder(ordered);
+			boolean submitted = true;
+			while (submitted)
+			{
+				submitted = false;
+				for (AbstractTableWorker table : ordered)
+				{
+					submitted |= table.submitNext(service);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Submits the tables in the order they were returned by the database
+	 */
+	private static final class CatalogScheduler extends TableScheduler
+	{
+		@Override
+		List<AbstractTableWorker> order(List<? extends AbstractTableWorker> tables)
+		{
+			return new ArrayList<>(tables);
+		}
+	}
+
+}
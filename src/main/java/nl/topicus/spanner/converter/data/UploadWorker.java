@@ -1,82 +1,319 @@
-package nl.topicus.spanner.converter.data;
-
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.logging.Logger;
-
-import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
-
-public class UploadWorker extends AbstractTablePartWorker
-{
-	private static final Logger log = Logger.getLogger(UploadWorker.class.getName());
-
-	private String selectFormat;
-
-	private Columns selectCols;
-
-	private long beginOffset;
-
-	private int batchSize;
-
-	private final long numberOfRecordsToCopy;
-
-	UploadWorker(String name, ConverterConfiguration config, String selectFormat, String sourceTable,
-			String destinationTable, Columns insertCols, Columns selectCols, long beginOffset,
-			long numberOfRecordsToCopy, int batchSize)
-	{
-		super(config, sourceTable, destinationTable, insertCols);
-		this.selectFormat = selectFormat;
-		this.selectCols = selectCols;
-		this.beginOffset = beginOffset;
-		this.numberOfRecordsToCopy = numberOfRecordsToCopy;
-		this.batchSize = batchSize;
-	}
-
-	@Override
-	public void run() throws SQLException
-	{
-		try (Connection destination = DriverManager.getConnection(config.getUrlDestination());
-				Connection source = DriverManager.getConnection(config.getUrlSource()))
-		{
-			log.fine(sourceTable + ": Starting copying " + numberOfRecordsToCopy + " records");
-			destination.setAutoCommit(false);
-
-			long lastRecord = beginOffset + numberOfRecordsToCopy;
-			long currentOffset = beginOffset;
-			PreparedStatement insertStatement = createInsertStatement(destination);
-			while (true)
-			{
-				long limit = Math.min(batchSize, lastRecord - currentOffset);
-				String select = selectFormat.replace("$COLUMNS", selectCols.getColumnNames());
-				select = select.replace("$TABLE", sourceTable);
-				select = select.replace("$PRIMARY_KEY", selectCols.getPrimaryKeyColumns());
-				select = select.replace("$BATCH_SIZE", String.valueOf(limit));
-				select = select.replace("$OFFSET", String.valueOf(currentOffset));
-				try (ResultSet rs = source.createStatement().executeQuery(select))
-				{
-					copyResultSet(rs, insertStatement);
-				}
-				catch (SQLException e)
-				{
-					setException(e);
-					throw e;
-				}
-				destination.commit();
-				log.info(sourceTable + ": Records copied so far: " + getRecordCount() + " of " + numberOfRecordsToCopy);
-				currentOffset = currentOffset + batchSize;
-				if (getRecordCount() >= numberOfRecordsToCopy)
-					break;
-			}
-		}
-		catch (SQLException e)
-		{
-			setException(e);
-			throw e;
-		}
-		log.fine(sourceTable + ": Finished copying " + getRecordCount() + " records");
-	}
-
-}
+package nl.topicus.spanner.converter.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.ReadMode;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+
+public class UploadWorker extends AbstractTablePartWorker
+{
+	private static final Logger log = Logger.getLogger(UploadWorker.class.getName());
+
+	private final String name;
+
+	private String selectFormat;
+
+	private Columns selectCols;
+
+	/**
+	 * The range of primary keys to copy. If <code>null</code>, the records are
+	 * selected using LIMIT/OFFSET paging.
+	 */
+	private final KeyRange keyRange;
+
+	private long beginOffset;
+
+	private int batchSize;
+
+	private final long numberOfRecordsToCopy;
+
+	private CheckpointJournal journal;
+
+	/**
+	 * True if this worker continues the work of a worker of a previous run
+	 * that did not finish
+	 */
+	private boolean resumed;
+
+	/**
+	 * The key of the last record that was committed by a previous run
+	 */
+	private List<Object> resumeKey;
+
+	UploadWorker(String name, ConverterConfiguration config, String selectFormat, String sourceTable,
+			String destinationTable, Columns insertCols, Columns selectCols, KeyRange keyRange, long beginOffset,
+			long numberOfRecordsToCopy, int batchSize)
+	{
+		super(config, sourceTable, destinationTable, insertCols);
+		this.name = name;
+		this.selectFormat = selectFormat;
+		this.selectCols = selectCols;
+		this.keyRange = keyRange;
+		this.beginOffset = beginOffset;
+		this.numberOfRecordsToCopy = numberOfRecordsToCopy;
+		this.batchSize = batchSize;
+	}
+
+	void setCheckpointJournal(CheckpointJournal journal)
+	{
+		this.journal = journal;
+	}
+
+	/**
+	 * Continue the key range of this worker after the given key, which was the
+	 * last key committed by a previous run. Any records after this key in the
+	 * destination will be deleted before copying, as these may have been
+	 * committed after the last checkpoint was written.
+	 * 
+	 * @param resumeKey
+	 *            The last committed key, or <code>null</code> if no
+	 *            checkpoint was written for this worker
+	 */
+	void resumeAfter(List<Object> resumeKey)
+	{
+		this.resumed = true;
+		this.resumeKey = resumeKey;
+	}
+
+	/**
+	 * Continue the offset range of this worker at the offset of the last
+	 * checkpoint of a previous run. The records that were committed after
+	 * this checkpoint cannot be identified by key, so these are updated
+	 * instead of inserted.
+	 */
+	void resumeAtOffset()
+	{
+		this.resumed = true;
+	}
+
+	@Override
+	protected boolean isUpsert()
+	{
+		return super.isUpsert() || resumed && keyRange == null;
+	}
+
+	@Override
+	public void run() throws SQLException
+	{
+		try (Connection destination = destinationPool.getConnection();
+				Connection source = sourcePool.getConnection())
+		{
+			log.fine(sourceTable + ": Starting copying " + numberOfRecordsToCopy + " records");
+			destination.setAutoCommit(false);
+			if (keyRange != null)
+			{
+				trackLastKey();
+				// Existing records are updated in upsert mode, so these do
+				// not have to be deleted
+				if (resumed && !config.isUpsertData())
+					deleteAfterResumeKey(destination);
+			}
+
+			try
+			{
+				if (keyRange == null)
+					copyWithOffsetPaging(source, destination);
+				else if (config.getReadMode() == ReadMode.Streaming)
+					copyWithStreaming(source, destination);
+				else if (config.getReadMode() == ReadMode.PostgreSQLCopy)
+					copyWithPostgreSQLCopy(source, destination);
+				else
+					copyWithKeysetPaging(source, destination);
+			}
+			finally
+			{
+				// A copy that failed has not closed its writer
+				closeWriter();
+			}
+			if (journal != null)
+				journal.finished(destinationTable, name);
+		}
+		catch (SQLException e)
+		{
+			setException(e);
+			throw e;
+		}
+		log.fine(sourceTable + ": Finished copying " + getRecordCount() + " records");
+	}
+
+	private void copyWithOffsetPaging(Connection source, Connection destination) throws SQLException
+	{
+		long lastRecord = beginOffset + numberOfRecordsToCopy;
+		long currentOffset = beginOffset;
+		startCopy(destination, batchSize);
+		while (true)
+		{
+			long limit = Math.min(getBatchSize(), lastRecord - currentOffset);
+			String select = selectFormat.replace("$COLUMNS", selectCols.getColumnNames());
+			select = select.replace("$TABLE", sourceTable);
+			select = select.replace("$PRIMARY_KEY", selectCols.getPrimaryKeyColumns());
+			select = select.replace("$BATCH_SIZE", String.valueOf(limit));
+			select = select.replace("$OFFSET", String.valueOf(currentOffset));
+			long count;
+			try (Statement statement = source.createStatement(); ResultSet rs = statement.executeQuery(select))
+			{
+				count = copyRecords(rs, Long.MAX_VALUE);
+			}
+			commitCopy();
+			log.fine(sourceTable + ": Records copied so far: " + getRecordCount() + " of " + numberOfRecordsToCopy);
+			currentOffset = currentOffset + limit;
+			if (currentOffset >= lastRecord || count == 0)
+				break;
+		}
+		finishCopy();
+	}
+
+	/**
+	 * Copies the key range of this worker page by page. Each page continues
+	 * after the primary key of the last record of the previous page, so the
+	 * source database never has to skip any records. The statement is
+	 * prepared again when the batch size changes.
+	 */
+	private void copyWithKeysetPaging(Connection source, Connection destination) throws SQLException
+	{
+		boolean rowValue = config.getSourceDatabaseType().supportsRowValueComparison();
+		startCopy(destination, batchSize);
+		List<Object> lastKey = resumeKey;
+		PreparedStatement select = null;
+		int preparedLimit = 0;
+		boolean preparedAfterKey = false;
+		try
+		{
+			while (true)
+			{
+				int limit = getBatchSize();
+				if (select == null || limit != preparedLimit || preparedAfterKey != (lastKey != null))
+				{
+					if (select != null)
+						select.close();
+					preparedLimit = limit;
+					preparedAfterKey = lastKey != null;
+					select = source.prepareStatement(createKeysetSelect(preparedAfterKey, rowValue, limit));
+				}
+				keyRange.bind(select, 1, lastKey, rowValue);
+				long count;
+				try (ResultSet rs = select.executeQuery())
+				{
+					count = copyRecords(rs, Long.MAX_VALUE);
+				}
+				commitCopy();
+				log.fine(sourceTable + ": Records copied so far: " + getRecordCount() + " of approximately "
+						+ numberOfRecordsToCopy);
+				if (count < limit)
+					break;
+				lastKey = getLastKey();
+			}
+		}
+		finally
+		{
+			if (select != null)
+				select.close();
+		}
+		finishCopy();
+	}
+
+	/**
+	 * Copies the key range of this worker using one forward-only cursor. Auto
+	 * commit is turned off on the source connection, as some drivers (i.e.
+	 * PostgreSQL) will otherwise ignore the fetch size and load the entire
+	 * result into memory.
+	 */
+	private void copyWithStreaming(Connection source, Connection destination) throws SQLException
+	{
+		boolean rowValue = config.getSourceDatabaseType().supportsRowValueComparison();
+		source.setAutoCommit(false);
+		startCopy(destination, batchSize);
+		try (PreparedStatement select = source.prepareStatement(createKeysetSelect(resumeKey != null, rowValue, 0),
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+		{
+			select.setFetchSize(config.getFetchSize());
+			keyRange.bind(select, 1, resumeKey, rowValue);
+			try (ResultSet rs = select.executeQuery())
+			{
+				while (copyRecords(rs, getBatchSize()) > 0)
+				{
+					commitCopy();
+					log.fine(sourceTable + ": Records copied so far: " + getRecordCount() + " of approximately "
+							+ numberOfRecordsToCopy);
+				}
+			}
+		}
+		source.commit();
+		finishCopy();
+	}
+
+	/**
+	 * Copies the key range of this worker using
+	 * <code>COPY (SELECT ...) TO STDOUT</code> on a PostgreSQL source
+	 */
+	private void copyWithPostgreSQLCopy(Connection source, Connection destination) throws SQLException
+	{
+		String select = selectFormat.replace("$COLUMNS", selectCols.getColumnNames());
+		select = select.replace("$TABLE", sourceTable);
+		select = select.replace("$WHERE_CLAUSE", keyRange.getLiteralWhereClause(selectCols, resumeKey,
+				config.getSourceDatabaseType().supportsRowValueComparison()));
+		select = select.replace("$PRIMARY_KEY", selectCols.getPrimaryKeyColumns());
+		startCopy(destination, batchSize);
+		try (PostgreSQLCopyReader reader = new PostgreSQLCopyReader(source, select, insertCols.getColumnTypes()))
+		{
+			long count = 0;
+			Object[] row;
+			while ((row = reader.next()) != null)
+			{
+				copyRecord(row);
+				count++;
+				if (count >= getBatchSize())
+				{
+					count = 0;
+					commitCopy();
+					log.fine(sourceTable + ": Records copied so far: " + getRecordCount() + " of approximately "
+							+ numberOfRecordsToCopy);
+				}
+			}
+		}
+		finishCopy();
+	}
+
+	private void deleteAfterResumeKey(Connection destination) throws SQLException
+	{
+		boolean rowValue = config.getDestinationDatabaseType().supportsRowValueComparison();
+		String sql = "DELETE FROM " + destinationTable + " WHERE "
+				+ keyRange.getWhereClause(insertCols, resumeKey != null, rowValue);
+		try (PreparedStatement delete = destination.prepareStatement(sql))
+		{
+			keyRange.bind(delete, 1, resumeKey, rowValue);
+			int count = delete.executeUpdate();
+			log.info(destinationTable + ": Deleted " + count + " records after the last checkpoint of " + name);
+		}
+		destination.commit();
+	}
+
+	@Override
+	protected void committed(List<Object> lastKey, long records)
+	{
+		if (journal != null)
+		{
+			if (keyRange == null)
+				journal.checkpoint(destinationTable, name, beginOffset + records);
+			else
+				journal.checkpoint(destinationTable, name, lastKey);
+		}
+	}
+
+	private String createKeysetSelect(boolean continueAfterKey, boolean rowValue, int limit)
+	{
+		String select = selectFormat.replace("$COLUMNS", selectCols.getColumnNames());
+		select = select.replace("$TABLE", sourceTable);
+		select = select.replace("$WHERE_CLAUSE", keyRange.getWhereClause(selectCols, continueAfterKey, rowValue));
+		select = select.replace("$PRIMARY_KEY", selectCols.getPrimaryKeyColumns());
+		select = select.replace("$BATCH_SIZE", String.valueOf(limit));
+		return select;
+	}
+
+}
\ No newline at end of file
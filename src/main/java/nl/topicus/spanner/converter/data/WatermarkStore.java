@@ -0,0 +1,176 @@
+package nl.topicus.spanner.converter.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+
+/**
+ * Stores the watermark of each table that is copied in Incremental mode in a
+ * properties file on local disk. The watermark of a table is the highest value
+ * of its watermark column that has been copied. The watermark column must be a
+ * column whose value only increases when a record is inserted or updated, such
+ * as a modification timestamp or a sequence number.
+ *
+ * An incremental copy of a table copies the records with a watermark above the
+ * stored watermark, and at or below the highest watermark in the source when
+ * the copy of the table is prepared. If no watermark has been stored for a
+ * table, the highest watermark in the destination table is used. The new
+ * watermark of a table is only stored after all workers of the table have
+ * finished without errors, so a failed copy is repeated by the next run.
+ */
+final class WatermarkStore
+{
+	private static final Logger log = Logger.getLogger(WatermarkStore.class.getName());
+
+	private final Path path;
+
+	private final DatabaseType sourceType;
+
+	private final Properties watermarks = new Properties();
+
+	/**
+	 * The watermarks that will be stored when the copy of a table has finished
+	 */
+	private final Map<String, Object> pending = new ConcurrentHashMap<>();
+
+	WatermarkStore(String file, DatabaseType sourceType) throws IOException
+	{
+		this.path = Paths.get(file);
+		this.sourceType = sourceType;
+		if (Files.exists(path))
+		{
+			try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+			{
+				watermarks.load(reader);
+			}
+		}
+	}
+
+	/**
+	 * Determines the records of the given table that have changed since the
+	 * last copy.
+	 *
+	 * @param source
+	 *            A connection to the source database
+	 * @param destination
+	 *            A connection to the destination database
+	 * @param tableSpec
+	 *            The source table
+	 * @param table
+	 *            The destination table
+	 * @param column
+	 *            The watermark column of the table
+	 * @return A derived table to select from instead of the source table that
+	 *         only contains the records that have changed
+	 */
+	String getChangedRecords(Connection source, Connection destination, String tableSpec, String table,
+			String column) throws SQLException
+	{
+		Object lower = getStoredWatermark(table);
+		if (lower == null)
+			lower = getMaxWatermark(destination, table, column);
+		Object upper = getMaxWatermark(source, tableSpec, column);
+		String where;
+		if (upper == null)
+		{
+			where = "1=0";
+		}
+		else
+		{
+			where = column + " <= " + toLiteral(upper);
+			if (lower != null)
+				where = column + " > " + toLiteral(lower) + " AND " + where;
+			pending.put(table, upper);
+		}
+		log.info("Copying records of table " + table + " with " + column + " in (" + (lower == null ? "" : lower)
+				+ ", " + (upper == null ? "" : upper) + "]");
+		return "(SELECT * FROM " + tableSpec + " WHERE " + where + ") " + table;
+	}
+
+	/**
+	 * Stores the watermark of a table after all its records have been copied
+	 */
+	synchronized void finished(String table)
+	{
+		Object watermark = pending.remove(table);
+		if (watermark == null)
+			return;
+		watermarks.setProperty(table, CheckpointJournal.encodeKey(Collections.singletonList(watermark)));
+		try
+		{
+			// Replace the file at once, so an interrupted write never leaves
+			// an incomplete file
+			Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(),
+					".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+			{
+				watermarks.store(writer, "Watermarks of the tables that are copied incrementally");
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.warning("Could not store the watermark of table " + table + ": " + e.getMessage());
+		}
+	}
+
+	private Object getStoredWatermark(String table)
+	{
+		String value = watermarks.getProperty(table);
+		if (value == null)
+			return null;
+		List<Object> key = CheckpointJournal.decodeKey(value);
+		return key == null ? null : key.get(0);
+	}
+
+	private Object getMaxWatermark(Connection connection, String table, String column) throws SQLException
+	{
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("SELECT MAX(" + column + ") FROM " + table))
+		{
+			if (rs.next())
+				return rs.getObject(1);
+		}
+		finally
+		{
+			if (!connection.getAutoCommit())
+				connection.commit();
+		}
+		return null;
+	}
+
+	private String toLiteral(Object value)
+	{
+		// Timestamps are compared as an instant. Cloud Spanner would interpret
+		// a timestamp without a time zone in its default time zone. The
+		// PostgreSQL JDBC driver uses the time zone of the JVM as the time zone
+		// of the session, so a timestamp column without a time zone is
+		// converted in the same time zone as the values that the driver returns.
+		if (value instanceof Timestamp)
+			return (sourceType == DatabaseType.CloudSpanner ? "TIMESTAMP '" : "TIMESTAMP WITH TIME ZONE '")
+					+ ((Timestamp) value).toInstant() + "'";
+		if (sourceType == DatabaseType.CloudSpanner && value instanceof Date)
+			return "DATE '" + value + "'";
+		return KeyRange.toLiteral(value);
+	}
+
+}
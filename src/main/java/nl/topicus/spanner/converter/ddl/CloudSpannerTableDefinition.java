@@ -0,0 +1,290 @@
+package nl.topicus.spanner.converter.ddl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Reads the exact definition of an existing Cloud Spanner table and its
+ * secondary indices from the INFORMATION_SCHEMA of the database, and generates
+ * the DDL statements to drop and recreate the table. Dropping and recreating a
+ * table is a much cheaper way to empty a large table than deleting all its
+ * records, as the records do not have to be read and deleted one key range at
+ * a time.
+ *
+ * Only tables whose definition can be reproduced exactly are recreated. Tables
+ * that are interleaved in a parent table, that have interleaved child tables,
+ * that have or are referenced by foreign keys, that have check constraints,
+ * generated columns, column defaults, columns with options or a row deletion
+ * policy cannot be recreated.
+ */
+public final class CloudSpannerTableDefinition
+{
+	private static final Logger log = Logger.getLogger(CloudSpannerTableDefinition.class.getName());
+
+	private static final String TABLE_FILTER = "TABLE_CATALOG = '' AND TABLE_SCHEMA = '' AND TABLE_NAME = ?";
+
+	private final String table;
+
+	private final List<String> columns = new ArrayList<>();
+
+	private final List<String> primaryKey = new ArrayList<>();
+
+	private final Map<String, Index> indices = new LinkedHashMap<>();
+
+	private static final class Index
+	{
+		private final String name;
+
+		private final boolean unique;
+
+		private final boolean nullFiltered;
+
+		private final String parent;
+
+		private final List<String> columns = new ArrayList<>();
+
+		private final List<String> storing = new ArrayList<>();
+
+		private Index(String name, boolean unique, boolean nullFiltered, String parent)
+		{
+			this.name = name;
+			this.unique = unique;
+			this.nullFiltered = nullFiltered;
+			this.parent = parent;
+		}
+
+		private String getDefinition(String table)
+		{
+			StringBuilder sql = new StringBuilder("CREATE ");
+			if (unique)
+				sql.append("UNIQUE ");
+			if (nullFiltered)
+				sql.append("NULL_FILTERED ");
+			sql.append("INDEX ").append(name).append(" ON ").append(table).append(" (");
+			sql.append(String.join(", ", columns)).append(")");
+			if (!storing.isEmpty())
+				sql.append(" STORING (").append(String.join(", ", storing)).append(")");
+			if (parent != null && !"".equals(parent))
+				sql.append(", INTERLEAVE IN ").append(parent);
+			return sql.toString();
+		}
+	}
+
+	private CloudSpannerTableDefinition(String table)
+	{
+		this.table = table;
+	}
+
+	/**
+	 * @param destination
+	 *            A connection to the Cloud Spanner database
+	 * @param table
+	 *            The table to recreate
+	 * @return The statements that drop the secondary indices and the table,
+	 *         and then create the table and the indices again in the same
+	 *         definition, or <code>null</code> if the definition of the table
+	 *         cannot be reproduced
+	 */
+	public static List<String> getRecreateStatements(Connection destination, String table) throws SQLException
+	{
+		CloudSpannerTableDefinition definition = new CloudSpannerTableDefinition(table);
+		if (!definition.load(destination))
+			return null;
+		List<String> res = new ArrayList<>();
+		for (String index : definition.indices.keySet())
+			res.add("DROP INDEX " + index);
+		res.add("DROP TABLE " + table);
+		res.add(definition.getTableDefinition());
+		for (Index index : definition.indices.values())
+			res.add(index.getDefinition(table));
+		return res;
+	}
+
+	private boolean load(Connection destination) throws SQLException
+	{
+		try
+		{
+			if (!isStandalone(destination) || hasConstraints(destination) || hasColumnOptions(destination)
+					|| hasComputedColumns(destination) || hasRowDeletionPolicy(destination))
+				return false;
+			loadColumns(destination);
+			loadIndices(destination);
+			return !columns.isEmpty() && !primaryKey.isEmpty();
+		}
+		catch (SQLException e)
+		{
+			// The INFORMATION_SCHEMA of older instances and the emulator does
+			// not contain all the columns that are checked
+			log.fine("Could not read the definition of table " + table + ", it will not be recreated: "
+					+ e.getMessage());
+			return false;
+		}
+		finally
+		{
+			if (!destination.getAutoCommit())
+				destination.commit();
+		}
+	}
+
+	/**
+	 * @return true if the table is not interleaved in a parent table and has
+	 *         no interleaved child tables
+	 */
+	private boolean isStandalone(Connection destination) throws SQLException
+	{
+		return !exists(destination,
+				"SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_CATALOG = '' AND TABLE_SCHEMA = '' AND (TABLE_NAME = ? AND PARENT_TABLE_NAME <> '' OR PARENT_TABLE_NAME = ?)",
+				"is part of a table hierarchy");
+	}
+
+	/**
+	 * @return true if the table has foreign keys or check constraints, or is
+	 *         referenced by a foreign key of another table
+	 */
+	private boolean hasConstraints(Connection destination) throws SQLException
+	{
+		// NOT NULL columns are listed as check constraints that are recreated
+		// with the column definition
+		return exists(destination,
+				"SELECT CONSTRAINT_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS WHERE " + TABLE_FILTER
+						+ " AND (CONSTRAINT_TYPE = 'FOREIGN KEY' OR CONSTRAINT_TYPE = 'CHECK' AND CONSTRAINT_NAME NOT LIKE 'CK_IS_NOT_NULL_%')",
+				"has foreign keys or check constraints")
+				|| exists(destination,
+						"SELECT RC.CONSTRAINT_NAME FROM INFORMATION_SCHEMA.REFERENTIAL_CONSTRAINTS RC INNER JOIN INFORMATION_SCHEMA.TABLE_CONSTRAINTS TC ON TC.CONSTRAINT_CATALOG = RC.UNIQUE_CONSTRAINT_CATALOG AND TC.CONSTRAINT_SCHEMA = RC.UNIQUE_CONSTRAINT_SCHEMA AND TC.CONSTRAINT_NAME = RC.UNIQUE_CONSTRAINT_NAME WHERE TC.TABLE_CATALOG = '' AND TC.TABLE_SCHEMA = '' AND TC.TABLE_NAME = ?",
+						"is referenced by a foreign key");
+	}
+
+	private boolean hasColumnOptions(Connection destination) throws SQLException
+	{
+		return exists(destination,
+				"SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMN_OPTIONS WHERE " + TABLE_FILTER,
+				"has column options");
+	}
+
+	/**
+	 * @return true if the table has generated columns or columns with a
+	 *         default value
+	 */
+	private boolean hasComputedColumns(Connection destination) throws SQLException
+	{
+		return exists(destination, "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE " + TABLE_FILTER
+				+ " AND (IS_GENERATED <> 'NEVER' OR GENERATION_EXPRESSION IS NOT NULL OR COLUMN_DEFAULT IS NOT NULL)",
+				"has generated columns or column defaults");
+	}
+
+	private boolean hasRowDeletionPolicy(Connection destination) throws SQLException
+	{
+		return exists(destination, "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE " + TABLE_FILTER
+				+ " AND ROW_DELETION_POLICY_EXPRESSION IS NOT NULL", "has a row deletion policy");
+	}
+
+	/**
+	 * Executes a query on the INFORMATION_SCHEMA with the name of the table as
+	 * the value of all its parameters.
+	 *
+	 * @return true if the query returns a row
+	 */
+	private boolean exists(Connection destination, String sql, String reason) throws SQLException
+	{
+		try (PreparedStatement statement = destination.prepareStatement(sql))
+		{
+			long parameters = sql.chars().filter(c -> c == '?').count();
+			for (int index = 1; index <= parameters; index++)
+				statement.setString(index, table);
+			try (ResultSet rs = statement.executeQuery())
+			{
+				if (rs.next())
+				{
+					log.fine("Table " + table + " " + reason + " and cannot be recreated");
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void loadColumns(Connection destination) throws SQLException
+	{
+		try (PreparedStatement statement = destination
+				.prepareStatement("SELECT COLUMN_NAME, SPANNER_TYPE, IS_NULLABLE FROM INFORMATION_SCHEMA.COLUMNS WHERE "
+						+ TABLE_FILTER + " ORDER BY ORDINAL_POSITION"))
+		{
+			statement.setString(1, table);
+			try (ResultSet rs = statement.executeQuery())
+			{
+				while (rs.next())
+				{
+					String column = rs.getString("COLUMN_NAME") + " " + rs.getString("SPANNER_TYPE");
+					if ("NO".equals(rs.getString("IS_NULLABLE")))
+						column = column + " NOT NULL";
+					columns.add(column);
+				}
+			}
+		}
+	}
+
+	private void loadIndices(Connection destination) throws SQLException
+	{
+		try (PreparedStatement statement = destination.prepareStatement(
+				"SELECT INDEX_NAME, IS_UNIQUE, IS_NULL_FILTERED, PARENT_TABLE_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE "
+						+ TABLE_FILTER + " AND INDEX_TYPE = 'INDEX' ORDER BY INDEX_NAME"))
+		{
+			statement.setString(1, table);
+			try (ResultSet rs = statement.executeQuery())
+			{
+				while (rs.next())
+				{
+					String name = rs.getString("INDEX_NAME");
+					indices.put(name, new Index(name, rs.getBoolean("IS_UNIQUE"), rs.getBoolean("IS_NULL_FILTERED"),
+							rs.getString("PARENT_TABLE_NAME")));
+				}
+			}
+		}
+		try (PreparedStatement statement = destination.prepareStatement(
+				"SELECT INDEX_NAME, INDEX_TYPE, COLUMN_NAME, ORDINAL_POSITION, COLUMN_ORDERING FROM INFORMATION_SCHEMA.INDEX_COLUMNS WHERE "
+						+ TABLE_FILTER + " ORDER BY INDEX_NAME, ORDINAL_POSITION"))
+		{
+			statement.setString(1, table);
+			try (ResultSet rs = statement.executeQuery())
+			{
+				while (rs.next())
+				{
+					String column = rs.getString("COLUMN_NAME");
+					rs.getLong("ORDINAL_POSITION");
+					// Stored columns have no position in the index
+					boolean stored = rs.wasNull();
+					if (!stored && "DESC".equals(rs.getString("COLUMN_ORDERING")))
+						column = column + " DESC";
+					if ("PRIMARY_KEY".equals(rs.getString("INDEX_TYPE")))
+					{
+						primaryKey.add(column);
+						continue;
+					}
+					Index index = indices.get(rs.getString("INDEX_NAME"));
+					if (index == null)
+						continue;
+					if (stored)
+						index.storing.add(column);
+					else
+						index.columns.add(column);
+				}
+			}
+		}
+	}
+
+	private String getTableDefinition()
+	{
+		StringBuilder sql = new StringBuilder("CREATE TABLE ").append(table).append(" (\n");
+		sql.append(String.join(",\n", columns));
+		sql.append(") PRIMARY KEY (").append(String.join(", ", primaryKey)).append(")");
+		return sql.toString();
+	}
+
+}
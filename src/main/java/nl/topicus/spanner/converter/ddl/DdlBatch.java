@@ -0,0 +1,82 @@
+package nl.topicus.spanner.converter.ddl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+
+/**
+ * Collects DDL statements and executes them in batches of at most
+ * TableConverter.ddlBatchSize statements using the JDBC batch API. Cloud
+ * Spanner applies each schema change as a long running operation that can
+ * take many seconds, so applying many statements in one schema update is much
+ * faster than executing them one by one. The statements are executed in the
+ * order they were added.
+ */
+public class DdlBatch
+{
+	private static final Logger log = Logger.getLogger(DdlBatch.class.getName());
+
+	private final Connection destination;
+
+	private final int batchSize;
+
+	private final List<String> statements = new ArrayList<>();
+
+	public DdlBatch(Connection destination, ConverterConfiguration config)
+	{
+		this.destination = destination;
+		this.batchSize = Math.max(config.getDdlBatchSize(), 1);
+	}
+
+	public void add(String sql)
+	{
+		statements.add(sql);
+	}
+
+	public boolean isEmpty()
+	{
+		return statements.isEmpty();
+	}
+
+	/**
+	 * Executes all statements that have been added and clears the batch
+	 */
+	public void execute() throws SQLException
+	{
+		int executed = 0;
+		for (List<String> batch : ConverterUtils.partition(statements, batchSize))
+		{
+			long startTime = System.currentTimeMillis();
+			try (Statement statement = destination.createStatement())
+			{
+				if (batch.size() == 1)
+				{
+					statement.executeUpdate(batch.get(0));
+				}
+				else
+				{
+					for (String sql : batch)
+						statement.addBatch(sql);
+					statement.executeBatch();
+				}
+			}
+			catch (SQLException e)
+			{
+				log.severe("DDL batch of " + batch.size() + " statements failed after " + executed
+						+ " successful statements: " + e.getMessage());
+				throw e;
+			}
+			executed += batch.size();
+			log.info("Executed " + batch.size() + " DDL statements in " + (System.currentTimeMillis() - startTime)
+					+ " ms (" + executed + " of " + statements.size() + ")");
+		}
+		statements.clear();
+	}
+
+}
@@ -1,188 +1,266 @@
-package nl.topicus.spanner.converter.ddl;
-
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.logging.Logger;
-
-import nl.topicus.spanner.converter.ConvertMode;
-import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
-
-public class IndexConverter
-{
-	private static final Logger log = Logger.getLogger(IndexConverter.class.getName());
-
-	private final Connection source;
-
-	private final Connection destination;
-
-	private final Set<String> existingIndices = new HashSet<>();
-
-	private final Set<String> primaryKeys = new HashSet<>();
-
-	private final ConverterConfiguration config;
-
-	public IndexConverter(Connection source, Connection destination, ConverterConfiguration config)
-	{
-		this.source = source;
-		this.destination = destination;
-		this.config = config;
-	}
-
-	private void initializeExistingIndices(String catalog, String schema) throws SQLException
-	{
-		existingIndices.clear();
-		try (ResultSet tables = destination.getMetaData().getTables(catalog, schema, null, new String[] { "TABLE" }))
-		{
-			while (tables.next())
-			{
-				String tableSchema = tables.getString("TABLE_SCHEM");
-				if (!config.getDestinationDatabaseType().isSystemSchema(tableSchema))
-				{
-					String table = tables.getString("TABLE_NAME");
-					try (ResultSet indices = destination.getMetaData().getIndexInfo(catalog, schema, table, false,
-							true))
-					{
-						while (indices.next())
-						{
-							existingIndices.add(indices.getString("INDEX_NAME").toUpperCase());
-						}
-					}
-				}
-			}
-		}
-	}
-
-	private void initializePrimaryKeys(String catalog, String schema) throws SQLException
-	{
-		primaryKeys.clear();
-		try (ResultSet tables = source.getMetaData().getTables(catalog, schema, null, new String[] { "TABLE" }))
-		{
-			while (tables.next())
-			{
-				String tableSchema = tables.getString("TABLE_SCHEM");
-				if (!config.getSourceDatabaseType().isSystemSchema(tableSchema))
-				{
-					String table = tables.getString("TABLE_NAME");
-					try (ResultSet pks = source.getMetaData().getPrimaryKeys(catalog, tableSchema, table))
-					{
-						while (pks.next())
-						{
-							primaryKeys.add(pks.getString("PK_NAME").toUpperCase());
-						}
-					}
-				}
-			}
-		}
-	}
-
-	public String convert(boolean create) throws SQLException
-	{
-		StringBuilder sql = new StringBuilder();
-		initializeExistingIndices(config.getCatalog(), config.getSchema());
-		initializePrimaryKeys(config.getCatalog(), config.getSchema());
-		try (ResultSet tbls = source.getMetaData().getTables(config.getCatalog(), config.getSchema(), null,
-				new String[] { "TABLE" }))
-		{
-			while (tbls.next())
-			{
-				String tableSchema = tbls.getString("TABLE_SCHEM");
-				if (!config.getSourceDatabaseType().isSystemSchema(tableSchema))
-				{
-					String table = tbls.getString("TABLE_NAME");
-					try (ResultSet indices = source.getMetaData().getIndexInfo(config.getCatalog(), tableSchema, table,
-							false, true))
-					{
-						while (indices.next())
-						{
-							String indexName = indices.getString("INDEX_NAME");
-							// Skip all primary keys
-							if (!primaryKeys.contains(indexName.toUpperCase()))
-							{
-								boolean exists = existingIndices
-										.contains(indices.getString("INDEX_NAME").toUpperCase());
-								if (exists && config.getTableConvertMode() == ConvertMode.DropAndRecreate)
-								{
-									log.info("Index " + indices.getString("INDEX_NAME")
-											+ " already exists. Dropping index");
-									dropIndex(indices.getString("INDEX_NAME"));
-									log.info(indices.getString("INDEX_NAME") + " dropped");
-								}
-								String definition = getIndexDefinition(indices, exists);
-								if (definition != null)
-								{
-									sql.append(definition).append("\n;\n\n");
-									sql.append(
-											"/*---------------------------------------------------------------------*/\n");
-									if (create)
-									{
-										log.info("Creating index " + indexName);
-										destination.createStatement().executeUpdate(definition);
-									}
-									else
-									{
-										log.info("Index definition created: " + indexName);
-									}
-								}
-								else
-								{
-									log.info("Skipping index " + indexName);
-								}
-							}
-							while (!indices.isAfterLast() && indexName.equals(indices.getString("INDEX_NAME")))
-							{
-								indices.next();
-							}
-						}
-					}
-				}
-			}
-		}
-		return sql.toString();
-	}
-
-	private String getIndexDefinition(ResultSet indices, boolean exists) throws SQLException
-	{
-		String table = indices.getString("TABLE_NAME");
-		String indexName = indices.getString("INDEX_NAME");
-		ConvertMode createMode = config.getTableConvertMode();
-		if (exists)
-		{
-			if (createMode == ConvertMode.SkipExisting)
-				return null;
-			if (createMode == ConvertMode.ThrowExceptionIfExists)
-				throw new IllegalStateException("Index " + indexName + " already exists");
-		}
-		StringBuilder sql = new StringBuilder("CREATE INDEX ").append(indexName).append(" ON ").append(table)
-				.append(" (\n");
-		boolean first = true;
-		while (true)
-		{
-			String currentName = indices.getString("INDEX_NAME");
-			if (!indexName.equals(currentName))
-				break;
-			if (!first)
-			{
-				sql.append(",\n");
-			}
-			sql.append(indices.getString("COLUMN_NAME")).append(" ");
-			String ascOrDesc = indices.getString("ASC_OR_DESC");
-			if ("D".equals(ascOrDesc))
-				sql.append("DESC ");
-			first = false;
-			if (!indices.next())
-				break;
-		}
-		sql.append(")");
-		return sql.toString();
-	}
-
-	private void dropIndex(String index) throws SQLException
-	{
-		String sql = "DROP INDEX " + index;
-		destination.createStatement().executeUpdate(sql);
-	}
-
-}
+package nl.topicus.spanner.converter.ddl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.ConvertMode;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+import nl.topicus.spanner.converter.util.ConverterUtils;
+import nl.topicus.spanner.converter.util.SchemaCatalog;
+import nl.topicus.spanner.converter.util.SchemaCatalog.IndexInfo;
+import nl.topicus.spanner.converter.util.SchemaCatalog.TableInfo;
+
+public class IndexConverter
+{
+	private static final Logger log = Logger.getLogger(IndexConverter.class.getName());
+
+	private final SchemaCatalog sourceCatalog;
+
+	private final Connection destination;
+
+	private final Set<String> primaryKeys = new HashSet<>();
+
+	private final ConverterConfiguration config;
+
+	/**
+	 * The statements to drop the existing indices that will be recreated
+	 */
+	private final List<String> dropStatements = new ArrayList<>();
+
+	/**
+	 * The definitions of the indices to create by index name
+	 */
+	private final Map<String, String> definitions = new LinkedHashMap<>();
+
+	public IndexConverter(SchemaCatalog sourceCatalog, Connection destination, ConverterConfiguration config)
+	{
+		this.sourceCatalog = sourceCatalog;
+		this.destination = destination;
+		this.config = config;
+	}
+
+	private void initializePrimaryKeys()
+	{
+		primaryKeys.clear();
+		for (TableInfo table : sourceCatalog.getTables())
+		{
+			if (table.getPrimaryKeyName() != null)
+				primaryKeys.add(table.getPrimaryKeyName().toUpperCase());
+		}
+	}
+
+	public String convert(boolean create) throws SQLException
+	{
+		String sql = createDefinitions();
+		if (create && (!dropStatements.isEmpty() || !definitions.isEmpty()))
+		{
+			DdlBatch batch = new DdlBatch(destination, config);
+			dropStatements.forEach(batch::add);
+			definitions.values().forEach(batch::add);
+			log.info("Creating indices");
+			batch.execute();
+		}
+		return sql;
+	}
+
+	/**
+	 * Drops the existing indices that will be recreated when the table convert
+	 * mode is DropAndRecreate, so that data can be loaded into the tables
+	 * without maintaining these indices. The indices are created by
+	 * {@link #createIndices()} after the data has been loaded.
+	 *
+	 * @return The DDL script of all indices
+	 */
+	public String dropIndices() throws SQLException
+	{
+		String sql = createDefinitions();
+		if (!dropStatements.isEmpty())
+		{
+			DdlBatch batch = new DdlBatch(destination, config);
+			dropStatements.forEach(batch::add);
+			log.info("Dropping existing indices until the data has been loaded");
+			batch.execute();
+		}
+		return sql;
+	}
+
+	/**
+	 * Creates the indices that were defined by {@link #dropIndices()}. Cloud
+	 * Spanner builds all indices of one schema update at the same time, so the
+	 * indices are created in batches of TableConverter.indexCreationParallelism
+	 * statements. Other databases create the indices in parallel on separate
+	 * connections, at most TableConverter.indexCreationParallelism at a time.
+	 */
+	public void createIndices() throws SQLException
+	{
+		if (definitions.isEmpty())
+			return;
+		int parallelism = Math.max(config.getIndexCreationParallelism(), 1);
+		log.info("Creating " + definitions.size() + " indices, " + parallelism + " at a time");
+		long startTime = System.currentTimeMillis();
+		if (config.getDestinationDatabaseType() == DatabaseType.CloudSpanner)
+			createIndicesInBatches(parallelism);
+		else
+			createIndicesInParallel(parallelism);
+		log.info("Created " + definitions.size() + " indices in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	private void createIndicesInBatches(int parallelism) throws SQLException
+	{
+		int created = 0;
+		for (List<String> names : ConverterUtils.partition(new ArrayList<>(definitions.keySet()), parallelism))
+		{
+			long startTime = System.currentTimeMillis();
+			DdlBatch batch = new DdlBatch(destination, config);
+			for (String name : names)
+				batch.add(definitions.get(name));
+			batch.execute();
+			created += names.size();
+			log.info("Created indices " + String.join(", ", names) + " in "
+					+ (System.currentTimeMillis() - startTime) + " ms (" + created + " of " + definitions.size()
+					+ ")");
+		}
+	}
+
+	private void createIndicesInParallel(int parallelism) throws SQLException
+	{
+		ExecutorService service = Executors.newFixedThreadPool(parallelism);
+		AtomicInteger created = new AtomicInteger();
+		List<Future<Void>> futures = new ArrayList<>(definitions.size());
+		for (Entry<String, String> definition : definitions.entrySet())
+		{
+			futures.add(service.submit(() -> {
+				long startTime = System.currentTimeMillis();
+				try (Connection connection = DriverManager.getConnection(config.getUrlDestination());
+						Statement statement = connection.createStatement())
+				{
+					statement.executeUpdate(definition.getValue());
+					if (!connection.getAutoCommit())
+						connection.commit();
+				}
+				log.info("Created index " + definition.getKey() + " in " + (System.currentTimeMillis() - startTime)
+						+ " ms (" + created.incrementAndGet() + " of " + definitions.size() + ")");
+				return null;
+			}));
+		}
+		service.shutdown();
+		SQLException exception = null;
+		for (Future<Void> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch (InterruptedException e)
+			{
+				service.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while creating indices", e);
+			}
+			catch (ExecutionException e)
+			{
+				log.severe("Creating index failed: " + e.getCause().getMessage());
+				if (exception == null)
+					exception = e.getCause() instanceof SQLException ? (SQLException) e.getCause()
+							: new SQLException(e.getCause().getMessage(), e.getCause());
+			}
+		}
+		if (exception != null)
+			throw exception;
+	}
+
+	/**
+	 * Creates the drop statements and definitions of all indices of the source
+	 * catalog
+	 *
+	 * @return The DDL script of all indices
+	 */
+	private String createDefinitions() throws SQLException
+	{
+		StringBuilder sql = new StringBuilder();
+		dropStatements.clear();
+		definitions.clear();
+		SchemaCatalog existingIndices = SchemaCatalog.load(destination, config.getCatalog(), config.getSchema(),
+				config.getDestinationDatabaseType());
+		initializePrimaryKeys();
+		for (TableInfo table : sourceCatalog.getTables())
+		{
+			for (IndexInfo index : table.getIndices())
+			{
+				String indexName = index.getName();
+				// Skip all primary keys
+				if (primaryKeys.contains(indexName.toUpperCase()))
+					continue;
+				boolean exists = existingIndices.containsIndexIgnoreCase(indexName);
+				if (exists && config.getTableConvertMode() == ConvertMode.DropAndRecreate)
+				{
+					log.info("Index " + indexName + " already exists. Index will be dropped");
+					dropStatements.add(getDropIndexStatement(indexName));
+				}
+				String definition = getIndexDefinition(table, index, exists);
+				if (definition != null)
+				{
+					sql.append(definition).append("\n;\n\n");
+					sql.append("/*---------------------------------------------------------------------*/\n");
+					log.info("Index definition created: " + indexName);
+					definitions.put(indexName, definition);
+				}
+				else
+				{
+					log.info("Skipping index " + indexName);
+				}
+			}
+		}
+		return sql.toString();
+	}
+
+	private String getIndexDefinition(TableInfo table, IndexInfo index, boolean exists)
+	{
+		String indexName = index.getName();
+		ConvertMode createMode = config.getTableConvertMode();
+		if (exists)
+		{
+			if (createMode == ConvertMode.SkipExisting || createMode == ConvertMode.Incremental
+					|| createMode == ConvertMode.Merge)
+				return null;
+			if (createMode == ConvertMode.ThrowExceptionIfExists)
+				throw new IllegalStateException("Index " + indexName + " already exists");
+		}
+		StringBuilder sql = new StringBuilder("CREATE INDEX ").append(indexName).append(" ON ")
+				.append(table.getName()).append(" (\n");
+		for (int i = 0; i < index.getColumns().size(); i++)
+		{
+			if (i > 0)
+			{
+				sql.append(",\n");
+			}
+			sql.append(index.getColumns().get(i)).append(" ");
+			if (index.isDescending(i))
+				sql.append("DESC ");
+		}
+		sql.append(")");
+		return sql.toString();
+	}
+
+	private String getDropIndexStatement(String index)
+	{
+		return "DROP INDEX " + index;
+	}
+
+}
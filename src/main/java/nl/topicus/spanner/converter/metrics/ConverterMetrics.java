@@ -0,0 +1,225 @@
+package nl.topicus.spanner.converter.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+
+/**
+ * Registry of the metrics of all tables and upload workers of a data copy.
+ * The metrics are published as MXBeans in the domain {@value #DOMAIN} and, if
+ * a metrics file has been configured, written to that file in the Prometheus
+ * text format at a fixed interval. The file is written to a temporary file
+ * first and then moved, so a collector never reads a partially written file.
+ */
+public final class ConverterMetrics implements ConverterMetricsMXBean, Closeable
+{
+	private static final Logger log = Logger.getLogger(ConverterMetrics.class.getName());
+
+	public static final String DOMAIN = "nl.topicus.spanner.converter";
+
+	private final boolean jmx;
+
+	private final Path file;
+
+	private final int intervalSeconds;
+
+	private final Map<String, TableMetrics> tables = new ConcurrentSkipListMap<>();
+
+	private final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+
+	private ScheduledExecutorService scheduler;
+
+	public ConverterMetrics(ConverterConfiguration config)
+	{
+		this.jmx = config.isJmxMetrics();
+		this.file = config.getMetricsFile() == null ? null : Paths.get(config.getMetricsFile());
+		this.intervalSeconds = config.getMetricsIntervalSeconds();
+	}
+
+	/**
+	 * Publishes the metrics of the data copy and starts writing the metrics
+	 * file
+	 */
+	public void start()
+	{
+		register(this, "type=Converter");
+		if (file != null)
+		{
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "metrics-writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleAtFixedRate(this::writeFile, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * @return The metrics of the given table, which are created and published
+	 *         on first use
+	 */
+	public TableMetrics getTable(String table)
+	{
+		TableMetrics res = tables.get(table);
+		if (res == null)
+		{
+			TableMetrics created = new TableMetrics(table, this);
+			res = tables.putIfAbsent(table, created);
+			if (res == null)
+			{
+				res = created;
+				register(created, "type=Table,name=" + ObjectName.quote(table));
+			}
+		}
+		return res;
+	}
+
+	List<TableMetrics> getTables()
+	{
+		return new ArrayList<>(tables.values());
+	}
+
+	void register(WorkerMetrics worker)
+	{
+		register(worker, "type=Worker,table=" + ObjectName.quote(worker.getTable()) + ",name=" + worker.getWorker());
+	}
+
+	private void register(Object mbean, String properties)
+	{
+		if (!jmx)
+			return;
+		try
+		{
+			ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(mbean, name);
+			registered.add(name);
+		}
+		catch (JMException e)
+		{
+			log.warning("Could not register metrics " + properties + ": " + e.getMessage());
+		}
+	}
+
+	private void writeFile()
+	{
+		try
+		{
+			Path directory = file.toAbsolutePath().getParent();
+			Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+			{
+				PrometheusTextFormat.write(this, writer);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.warning("Could not write metrics file " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the metrics file one last time and stops publishing the metrics
+	 */
+	@Override
+	public void close()
+	{
+		if (scheduler != null)
+		{
+			scheduler.shutdownNow();
+			writeFile();
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : registered)
+		{
+			try
+			{
+				server.unregisterMBean(name);
+			}
+			catch (JMException e)
+			{
+				// ignore, already unregistered
+			}
+		}
+		registered.clear();
+	}
+
+	@Override
+	public long getRows()
+	{
+		long res = 0L;
+		for (TableMetrics table : tables.values())
+			res += table.getRows();
+		return res;
+	}
+
+	@Override
+	public long getBytes()
+	{
+		long res = 0L;
+		for (TableMetrics table : tables.values())
+			res += table.getBytes();
+		return res;
+	}
+
+	@Override
+	public long getCommits()
+	{
+		long res = 0L;
+		for (TableMetrics table : tables.values())
+			res += table.getCommits();
+		return res;
+	}
+
+	@Override
+	public int getActiveWorkers()
+	{
+		int res = 0;
+		for (TableMetrics table : tables.values())
+			res += table.getActiveWorkers();
+		return res;
+	}
+
+	@Override
+	public int getQueuedWorkers()
+	{
+		int res = 0;
+		for (TableMetrics table : tables.values())
+			res += table.getQueuedWorkers();
+		return res;
+	}
+
+	@Override
+	public int getPipelineQueueDepth()
+	{
+		int res = 0;
+		for (TableMetrics table : tables.values())
+			res += table.getPipelineQueueDepth();
+		return res;
+	}
+
+}
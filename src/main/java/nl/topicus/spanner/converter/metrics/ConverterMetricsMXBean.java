@@ -0,0 +1,19 @@
+package nl.topicus.spanner.converter.metrics;
+
+/**
+ * The metrics of all tables of a data copy
+ */
+public interface ConverterMetricsMXBean
+{
+	long getRows();
+
+	long getBytes();
+
+	long getCommits();
+
+	int getActiveWorkers();
+
+	int getQueuedWorkers();
+
+	int getPipelineQueueDepth();
+}
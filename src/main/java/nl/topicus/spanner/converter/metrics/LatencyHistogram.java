@@ -0,0 +1,132 @@
+package nl.topicus.spanner.converter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with fixed buckets. Observations are recorded with
+ * {@link LongAdder}s, so many threads can record observations at the same time
+ * without contention.
+ */
+public final class LatencyHistogram
+{
+	/**
+	 * The upper bounds of the buckets in seconds. Observations above the last
+	 * bound are only counted in the total count.
+	 */
+	static final double[] BUCKETS = { 0.0001d, 0.0005d, 0.001d, 0.005d, 0.01d, 0.05d, 0.1d, 0.5d, 1d, 5d, 10d, 30d,
+			60d };
+
+	private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+	static
+	{
+		for (int index = 0; index < BUCKETS.length; index++)
+		{
+			BUCKET_NANOS[index] = (long) (BUCKETS[index] * TimeUnit.SECONDS.toNanos(1L));
+		}
+	}
+
+	/**
+	 * A summary of the observations of a histogram at one point in time
+	 */
+	public static final class Summary
+	{
+		private final long count;
+
+		private final double meanMillis;
+
+		private final double maxMillis;
+
+		private Summary(long count, double meanMillis, double maxMillis)
+		{
+			this.count = count;
+			this.meanMillis = meanMillis;
+			this.maxMillis = maxMillis;
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		public double getMeanMillis()
+		{
+			return meanMillis;
+		}
+
+		public double getMaxMillis()
+		{
+			return maxMillis;
+		}
+	}
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sumNanos = new LongAdder();
+
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+	LatencyHistogram()
+	{
+		for (int index = 0; index < buckets.length; index++)
+		{
+			buckets[index] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records one observation
+	 */
+	public void observe(long nanos)
+	{
+		for (int index = 0; index < BUCKET_NANOS.length; index++)
+		{
+			if (nanos <= BUCKET_NANOS[index])
+			{
+				buckets[index].increment();
+				break;
+			}
+		}
+		count.increment();
+		sumNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	public long getSumNanos()
+	{
+		return sumNanos.sum();
+	}
+
+	/**
+	 * @return The number of observations that were at most the upper bound of
+	 *         each bucket
+	 */
+	long[] getCumulativeBucketCounts()
+	{
+		long[] res = new long[buckets.length];
+		long total = 0L;
+		for (int index = 0; index < buckets.length; index++)
+		{
+			total += buckets[index].sum();
+			res[index] = total;
+		}
+		return res;
+	}
+
+	public Summary getSummary()
+	{
+		long currentCount = count.sum();
+		double mean = currentCount == 0L ? 0d : sumNanos.sum() / (double) currentCount / 1000000d;
+		return new Summary(currentCount, mean, maxNanos.get() / 1000000d);
+	}
+
+}
@@ -0,0 +1,113 @@
+package nl.topicus.spanner.converter.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Writes the metrics of a data copy in the Prometheus text exposition format
+ */
+final class PrometheusTextFormat
+{
+	private static final String PREFIX = "spanner_converter_";
+
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+	private PrometheusTextFormat()
+	{
+	}
+
+	static void write(ConverterMetrics metrics, Writer writer) throws IOException
+	{
+		List<TableMetrics> tables = metrics.getTables();
+		writeTableValues(writer, tables, "rows_total", "counter", "Records copied to the destination",
+				TableMetrics::getRows);
+		writeTableValues(writer, tables, "bytes_total", "counter", "Bytes copied to the destination",
+				TableMetrics::getBytes);
+		writeTableValues(writer, tables, "commits_total", "counter", "Commits on the destination",
+				TableMetrics::getCommits);
+		writeWorkerValues(writer, tables, "worker_rows_total", "Records copied by each upload worker",
+				WorkerMetrics::getRows);
+		writeWorkerValues(writer, tables, "worker_bytes_total", "Bytes copied by each upload worker",
+				WorkerMetrics::getBytes);
+		writeWorkerValues(writer, tables, "worker_commits_total", "Commits of each upload worker",
+				WorkerMetrics::getCommits);
+		writeTableValues(writer, tables, "active_workers", "gauge", "Upload workers that are running",
+				TableMetrics::getActiveWorkers);
+		writeTableValues(writer, tables, "queued_workers", "gauge", "Upload workers waiting for a thread",
+				TableMetrics::getQueuedWorkers);
+		writeTableValues(writer, tables, "pipeline_queue_depth", "gauge", "Batches waiting for a pipeline writer",
+				TableMetrics::getPipelineQueueDepth);
+		writeHistograms(writer, tables, "read_latency_seconds", "Time to read one page of records from the source",
+				TableMetrics::getReadHistogram);
+		writeHistograms(writer, tables, "bind_latency_seconds",
+				"Time to set the values of one batch of records on the destination", TableMetrics::getBindHistogram);
+		writeHistograms(writer, tables, "execute_latency_seconds",
+				"Time to execute one statement or JDBC batch on the destination", TableMetrics::getExecuteHistogram);
+		writeHistograms(writer, tables, "commit_latency_seconds", "Time to commit one batch to the destination",
+				TableMetrics::getCommitHistogram);
+	}
+
+	private static void writeHeader(Writer writer, String name, String type, String help) throws IOException
+	{
+		writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+		writer.write("# TYPE " + PREFIX + name + " " + type + "\n");
+	}
+
+	private static void writeTableValues(Writer writer, List<TableMetrics> tables, String name, String type,
+			String help, ToLongFunction<TableMetrics> value) throws IOException
+	{
+		writeHeader(writer, name, type, help);
+		for (TableMetrics table : tables)
+		{
+			writer.write(PREFIX + name + "{table=\"" + escape(table.getTable()) + "\"} "
+					+ value.applyAsLong(table) + "\n");
+		}
+	}
+
+	private static void writeWorkerValues(Writer writer, List<TableMetrics> tables, String name, String help,
+			ToLongFunction<WorkerMetrics> value) throws IOException
+	{
+		writeHeader(writer, name, "counter", help);
+		for (TableMetrics table : tables)
+		{
+			for (WorkerMetrics worker : table.getWorkers())
+			{
+				writer.write(PREFIX + name + "{table=\"" + escape(table.getTable()) + "\",worker=\""
+						+ worker.getWorker() + "\"} " + value.applyAsLong(worker) + "\n");
+			}
+		}
+	}
+
+	private static void writeHistograms(Writer writer, List<TableMetrics> tables, String name, String help,
+			Function<TableMetrics, LatencyHistogram> histogram) throws IOException
+	{
+		writeHeader(writer, name, "histogram", help);
+		for (TableMetrics table : tables)
+		{
+			LatencyHistogram values = histogram.apply(table);
+			String label = "table=\"" + escape(table.getTable()) + "\"";
+			// Read the count first, so no bucket exceeds the count
+			long count = values.getCount();
+			long sumNanos = values.getSumNanos();
+			long[] buckets = values.getCumulativeBucketCounts();
+			for (int index = 0; index < buckets.length; index++)
+			{
+				writer.write(PREFIX + name + "_bucket{" + label + ",le=\"" + LatencyHistogram.BUCKETS[index] + "\"} "
+						+ Math.min(buckets[index], count) + "\n");
+			}
+			writer.write(PREFIX + name + "_bucket{" + label + ",le=\"+Inf\"} " + count + "\n");
+			writer.write(PREFIX + name + "_sum{" + label + "} " + sumNanos / NANOS_PER_SECOND + "\n");
+			writer.write(PREFIX + name + "_count{" + label + "} " + count + "\n");
+		}
+	}
+
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+}
@@ -0,0 +1,181 @@
+package nl.topicus.spanner.converter.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import nl.topicus.spanner.converter.metrics.LatencyHistogram.Summary;
+
+/**
+ * The metrics of one table and its upload workers
+ */
+public final class TableMetrics implements TableMetricsMXBean
+{
+	private final String table;
+
+	/**
+	 * The registry the metrics of the workers of this table are registered
+	 * with, or <code>null</code> if the metrics are not published
+	 */
+	private final ConverterMetrics registry;
+
+	private final Map<Integer, WorkerMetrics> workers = new ConcurrentSkipListMap<>();
+
+	private final LongAdder rows = new LongAdder();
+
+	private final LongAdder bytes = new LongAdder();
+
+	private final LongAdder commits = new LongAdder();
+
+	private final LatencyHistogram readLatency = new LatencyHistogram();
+
+	private final LatencyHistogram bindLatency = new LatencyHistogram();
+
+	private final LatencyHistogram executeLatency = new LatencyHistogram();
+
+	private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+	final AtomicInteger activeWorkers = new AtomicInteger();
+
+	final AtomicInteger queuedWorkers = new AtomicInteger();
+
+	final AtomicInteger pipelineQueueDepth = new AtomicInteger();
+
+	/**
+	 * Creates metrics for a table that are not published
+	 */
+	public TableMetrics(String table)
+	{
+		this(table, null);
+	}
+
+	TableMetrics(String table, ConverterMetrics registry)
+	{
+		this.table = table;
+		this.registry = registry;
+	}
+
+	/**
+	 * @return The metrics of the upload worker with the given index, which
+	 *         are created on first use
+	 */
+	public WorkerMetrics getWorker(int worker)
+	{
+		WorkerMetrics res = workers.get(worker);
+		if (res == null)
+		{
+			WorkerMetrics created = new WorkerMetrics(this, worker);
+			res = workers.putIfAbsent(worker, created);
+			if (res == null)
+			{
+				res = created;
+				if (registry != null)
+					registry.register(created);
+			}
+		}
+		return res;
+	}
+
+	List<WorkerMetrics> getWorkers()
+	{
+		return new ArrayList<>(workers.values());
+	}
+
+	void committed(long records, long size, long latencyNanos)
+	{
+		rows.add(records);
+		bytes.add(size);
+		commits.increment();
+		commitLatency.observe(latencyNanos);
+	}
+
+	LatencyHistogram getReadHistogram()
+	{
+		return readLatency;
+	}
+
+	LatencyHistogram getBindHistogram()
+	{
+		return bindLatency;
+	}
+
+	LatencyHistogram getExecuteHistogram()
+	{
+		return executeLatency;
+	}
+
+	LatencyHistogram getCommitHistogram()
+	{
+		return commitLatency;
+	}
+
+	@Override
+	public String getTable()
+	{
+		return table;
+	}
+
+	@Override
+	public long getRows()
+	{
+		return rows.sum();
+	}
+
+	@Override
+	public long getBytes()
+	{
+		return bytes.sum();
+	}
+
+	@Override
+	public long getCommits()
+	{
+		return commits.sum();
+	}
+
+	@Override
+	public int getActiveWorkers()
+	{
+		return activeWorkers.get();
+	}
+
+	@Override
+	public int getQueuedWorkers()
+	{
+		return queuedWorkers.get();
+	}
+
+	@Override
+	public int getPipelineQueueDepth()
+	{
+		return pipelineQueueDepth.get();
+	}
+
+	@Override
+	public Summary getReadLatency()
+	{
+		return readLatency.getSummary();
+	}
+
+	@Override
+	public Summary getBindLatency()
+	{
+		return bindLatency.getSummary();
+	}
+
+	@Override
+	public Summary getExecuteLatency()
+	{
+		return executeLatency.getSummary();
+	}
+
+	@Override
+	public Summary getCommitLatency()
+	{
+		return commitLatency.getSummary();
+	}
+
+}
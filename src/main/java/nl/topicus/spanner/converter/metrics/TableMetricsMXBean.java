@@ -0,0 +1,31 @@
+package nl.topicus.spanner.converter.metrics;
+
+import nl.topicus.spanner.converter.metrics.LatencyHistogram.Summary;
+
+/**
+ * The metrics of one table
+ */
+public interface TableMetricsMXBean
+{
+	String getTable();
+
+	long getRows();
+
+	long getBytes();
+
+	long getCommits();
+
+	int getActiveWorkers();
+
+	int getQueuedWorkers();
+
+	int getPipelineQueueDepth();
+
+	Summary getReadLatency();
+
+	Summary getBindLatency();
+
+	Summary getExecuteLatency();
+
+	Summary getCommitLatency();
+}
@@ -0,0 +1,144 @@
+package nl.topicus.spanner.converter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of one upload worker. The counters are kept for the worker and
+ * for its table, the latencies and gauges only for the table. All methods may
+ * be called by several threads at the same time.
+ */
+public final class WorkerMetrics implements WorkerMetricsMXBean
+{
+	private final TableMetrics table;
+
+	private final int worker;
+
+	private final LongAdder rows = new LongAdder();
+
+	private final LongAdder bytes = new LongAdder();
+
+	private final LongAdder commits = new LongAdder();
+
+	WorkerMetrics(TableMetrics table, int worker)
+	{
+		this.table = table;
+		this.worker = worker;
+	}
+
+	/**
+	 * Records a commit to the destination
+	 * 
+	 * @param records
+	 *            The number of records in the commit
+	 * @param size
+	 *            The number of bytes in the commit
+	 * @param latencyNanos
+	 *            The time the commit took
+	 */
+	public void committed(long records, long size, long latencyNanos)
+	{
+		rows.add(records);
+		bytes.add(size);
+		commits.increment();
+		table.committed(records, size, latencyNanos);
+	}
+
+	/**
+	 * Records the time it took to read one page or batch of records from the
+	 * source
+	 */
+	public void read(long nanos)
+	{
+		table.getReadHistogram().observe(nanos);
+	}
+
+	/**
+	 * Records the time it took to set the values of one batch of records on
+	 * the destination statement or mutations
+	 */
+	public void bound(long nanos)
+	{
+		table.getBindHistogram().observe(nanos);
+	}
+
+	/**
+	 * Records the time it took to execute one statement or JDBC batch on the
+	 * destination
+	 */
+	public void executed(long nanos)
+	{
+		table.getExecuteHistogram().observe(nanos);
+	}
+
+	/**
+	 * The worker has been submitted and is waiting for a thread
+	 */
+	public void queued()
+	{
+		table.queuedWorkers.incrementAndGet();
+	}
+
+	/**
+	 * The worker has started running
+	 */
+	public void started()
+	{
+		table.queuedWorkers.decrementAndGet();
+		table.activeWorkers.incrementAndGet();
+	}
+
+	/**
+	 * The worker has stopped running
+	 */
+	public void finished()
+	{
+		table.activeWorkers.decrementAndGet();
+	}
+
+	/**
+	 * A batch has been put on the queue of the pipeline of the worker
+	 */
+	public void batchQueued()
+	{
+		table.pipelineQueueDepth.incrementAndGet();
+	}
+
+	/**
+	 * A batch has been taken from the queue of the pipeline of the worker
+	 */
+	public void batchDequeued()
+	{
+		table.pipelineQueueDepth.decrementAndGet();
+	}
+
+	@Override
+	public String getTable()
+	{
+		return table.getTable();
+	}
+
+	@Override
+	public int getWorker()
+	{
+		return worker;
+	}
+
+	@Override
+	public long getRows()
+	{
+		return rows.sum();
+	}
+
+	@Override
+	public long getBytes()
+	{
+		return bytes.sum();
+	}
+
+	@Override
+	public long getCommits()
+	{
+		return commits.sum();
+	}
+
+}
@@ -0,0 +1,17 @@
+package nl.topicus.spanner.converter.metrics;
+
+/**
+ * The metrics of one upload worker of a table
+ */
+public interface WorkerMetricsMXBean
+{
+	String getTable();
+
+	int getWorker();
+
+	long getRows();
+
+	long getBytes();
+
+	long getCommits();
+}
@@ -0,0 +1,255 @@
+package nl.topicus.spanner.converter.util;
+
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import com.google.cloud.ByteArray;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+
+/**
+ * Computes the number of bytes that a value will occupy in the destination
+ * database, without allocating any objects. For Cloud Spanner destinations the
+ * sizes are the sizes Cloud Spanner uses to compute the size of a commit: 1
+ * byte for BOOL, 8 bytes for INT64 and FLOAT64, 4 bytes for DATE, 12 bytes for
+ * TIMESTAMP and the number of bytes for BYTES and (UTF-8 encoded) STRING. For
+ * PostgreSQL destinations the sizes are the storage sizes of the PostgreSQL
+ * types, including the length header of variable length values.
+ *
+ * The size of a column is determined by the SQL type of the column in the
+ * destination. Values of columns with other types are sized by their Java
+ * type.
+ */
+public final class DataSize
+{
+	private DataSize()
+	{
+	}
+
+	/**
+	 * @param destination
+	 *            The type of the destination database
+	 * @param sqlType
+	 *            The type of the column in the destination from
+	 *            {@link java.sql.Types}
+	 * @param value
+	 *            The value that will be written to the column
+	 * @return The number of bytes the value will occupy in the destination, 0
+	 *         for <code>null</code>
+	 */
+	public static int sizeOf(DatabaseType destination, int sqlType, Object value)
+	{
+		if (value == null)
+			return 0;
+		if (destination == DatabaseType.CloudSpanner)
+			return sizeInCloudSpanner(sqlType, value);
+		return sizeInPostgreSQL(sqlType, value);
+	}
+
+	/**
+	 * @return The size of all non-null values of the given column type in the
+	 *         destination, or -1 if the size depends on the value
+	 */
+	public static int fixedSizeOf(DatabaseType destination, int sqlType)
+	{
+		if (destination == DatabaseType.CloudSpanner)
+			return fixedSizeInCloudSpanner(sqlType);
+		return fixedSizeInPostgreSQL(sqlType);
+	}
+
+	private static int sizeInCloudSpanner(int sqlType, Object value)
+	{
+		int size = fixedSizeInCloudSpanner(sqlType);
+		if (size >= 0)
+			return size;
+		return sizeOfValue(value, 8, 8, 4, 12);
+	}
+
+	private static int fixedSizeInCloudSpanner(int sqlType)
+	{
+		switch (sqlType)
+		{
+		case Types.BOOLEAN:
+		case Types.BIT:
+			return 1;
+		case Types.BIGINT:
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+		case Types.FLOAT:
+		case Types.REAL:
+		case Types.DOUBLE:
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return 8;
+		case Types.DATE:
+			return 4;
+		case Types.TIME:
+		case Types.TIMESTAMP:
+		case Types.TIMESTAMP_WITH_TIMEZONE:
+			return 12;
+		default:
+			return -1;
+		}
+	}
+
+	private static int sizeInPostgreSQL(int sqlType, Object value)
+	{
+		int size = fixedSizeInPostgreSQL(sqlType);
+		if (size >= 0)
+			return size;
+		if (sqlType == Types.DECIMAL || sqlType == Types.NUMERIC)
+			return value instanceof BigDecimal ? numericSize((BigDecimal) value) : 8;
+		size = sizeOfValue(value, 8, 8, 4, 8);
+		return isVariableLength(value) ? size + varlenaHeaderSize(size) : size;
+	}
+
+	private static int fixedSizeInPostgreSQL(int sqlType)
+	{
+		switch (sqlType)
+		{
+		case Types.BOOLEAN:
+		case Types.BIT:
+			return 1;
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return 2;
+		case Types.INTEGER:
+		case Types.REAL:
+			return 4;
+		case Types.FLOAT:
+			// FLOAT is mapped to REAL
+			return 4;
+		case Types.BIGINT:
+		case Types.DOUBLE:
+			return 8;
+		case Types.DATE:
+			return 4;
+		case Types.TIME:
+		case Types.TIMESTAMP:
+		case Types.TIMESTAMP_WITH_TIMEZONE:
+			return 8;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Sizes a value based on its Java type
+	 */
+	private static int sizeOfValue(Object value, int integerSize, int decimalSize, int dateSize, int timestampSize)
+	{
+		if (value instanceof CharSequence)
+			return utf8Length((CharSequence) value);
+		if (value instanceof byte[])
+			return ((byte[]) value).length;
+		if (value instanceof ByteArray)
+			return ((ByteArray) value).length();
+		if (value instanceof Boolean)
+			return 1;
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return integerSize;
+		if (value instanceof Number)
+			return decimalSize;
+		if (value instanceof java.sql.Date || value instanceof com.google.cloud.Date)
+			return dateSize;
+		if (value instanceof java.util.Date || value instanceof com.google.cloud.Timestamp)
+			return timestampSize;
+		if (value instanceof Blob)
+			return lobLength((Blob) value);
+		if (value instanceof Clob)
+			return lobLength((Clob) value);
+		return 0;
+	}
+
+	private static boolean isVariableLength(Object value)
+	{
+		return value instanceof CharSequence || value instanceof byte[] || value instanceof ByteArray
+				|| value instanceof Blob || value instanceof Clob;
+	}
+
+	/**
+	 * PostgreSQL stores a numeric as a header of 8 bytes and 2 bytes for each
+	 * group of 4 decimal digits
+	 */
+	private static int numericSize(BigDecimal value)
+	{
+		return 8 + 2 * ((value.precision() + 3) / 4);
+	}
+
+	/**
+	 * PostgreSQL stores variable length values with a header of 1 byte for
+	 * values of up to 126 bytes, and 4 bytes for longer values
+	 */
+	private static int varlenaHeaderSize(int size)
+	{
+		return size <= 126 ? 1 : 4;
+	}
+
+	private static int lobLength(Blob blob)
+	{
+		try
+		{
+			return (int) Math.min(blob.length(), Integer.MAX_VALUE);
+		}
+		catch (SQLException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the number of characters of a {@link Clob}. This is the exact
+	 * UTF-8 length for ASCII text, and a lower bound otherwise, as the content
+	 * would have to be read to compute the exact length.
+	 */
+	private static int lobLength(Clob clob)
+	{
+		try
+		{
+			return (int) Math.min(clob.length(), Integer.MAX_VALUE);
+		}
+		catch (SQLException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Computes the number of bytes of the UTF-8 encoding of the given
+	 * characters without encoding them. Unpaired surrogates count as one byte,
+	 * as {@link String#getBytes(java.nio.charset.Charset)} replaces these with
+	 * a question mark.
+	 */
+	public static int utf8Length(CharSequence value)
+	{
+		int length = value.length();
+		int res = length;
+		for (int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			if (c < 0x80)
+				continue;
+			if (c < 0x800)
+			{
+				res++;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1)))
+			{
+				// A surrogate pair of two chars is encoded as 4 bytes
+				res += 2;
+				i++;
+			}
+			else if (!Character.isSurrogate(c))
+			{
+				res += 2;
+			}
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,551 @@
+package nl.topicus.spanner.converter.util;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+
+/**
+ * In-memory snapshot of the tables, columns, primary keys and indices of one
+ * database. The snapshot is loaded once with one metadata call for each kind
+ * of object for all tables, instead of separate calls for each table. If the
+ * JDBC driver does not support loading primary keys or indices for all tables
+ * at once, these are loaded table by table.
+ *
+ * The snapshot is not updated when the database changes, so a new snapshot
+ * must be loaded after tables or indices have been created or dropped.
+ */
+public class SchemaCatalog
+{
+	private static final Logger log = Logger.getLogger(SchemaCatalog.class.getName());
+
+	public static class TableInfo
+	{
+		private final String catalog;
+
+		private final String schema;
+
+		private final String name;
+
+		private final List<ColumnInfo> columns = new ArrayList<>();
+
+		private final List<String> primaryKeyColumns = new ArrayList<>();
+
+		private String primaryKeyName;
+
+		private final Map<String, IndexInfo> indices = new LinkedHashMap<>();
+
+		private int numberOfIndexColumns;
+
+		private final Map<String, ForeignKeyInfo> foreignKeys = new LinkedHashMap<>();
+
+		private TableInfo(String catalog, String schema, String name)
+		{
+			this.catalog = catalog;
+			this.schema = schema;
+			this.name = name;
+		}
+
+		public String getCatalog()
+		{
+			return catalog;
+		}
+
+		public String getSchema()
+		{
+			return schema;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public List<ColumnInfo> getColumns()
+		{
+			return Collections.unmodifiableList(columns);
+		}
+
+		/**
+		 * @return The primary key columns in the order they are returned by
+		 *         {@link DatabaseMetaData#getPrimaryKeys(String, String, String)}
+		 */
+		public List<String> getPrimaryKeyColumns()
+		{
+			return Collections.unmodifiableList(primaryKeyColumns);
+		}
+
+		public String getPrimaryKeyName()
+		{
+			return primaryKeyName;
+		}
+
+		/**
+		 * @return All indices of the table, including the index of the primary
+		 *         key if the database reports it as an index
+		 */
+		public List<IndexInfo> getIndices()
+		{
+			return new ArrayList<>(indices.values());
+		}
+
+		/**
+		 * @return The total number of columns of all indices of the table
+		 */
+		public int getNumberOfIndexColumns()
+		{
+			return numberOfIndexColumns;
+		}
+
+		/**
+		 * @return The foreign keys of the table that reference other tables.
+		 *         Empty unless {@link SchemaCatalog#loadForeignKeys(Connection)}
+		 *         has been called.
+		 */
+		public List<ForeignKeyInfo> getForeignKeys()
+		{
+			return new ArrayList<>(foreignKeys.values());
+		}
+	}
+
+	public static class ColumnInfo
+	{
+		private final String name;
+
+		private final int dataType;
+
+		private final int columnSize;
+
+		private final int nullable;
+
+		private ColumnInfo(String name, int dataType, int columnSize, int nullable)
+		{
+			this.name = name;
+			this.dataType = dataType;
+			this.columnSize = columnSize;
+			this.nullable = nullable;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return The SQL type from {@link java.sql.Types}
+		 */
+		public int getDataType()
+		{
+			return dataType;
+		}
+
+		public int getColumnSize()
+		{
+			return columnSize;
+		}
+
+		/**
+		 * @return One of {@link DatabaseMetaData#columnNoNulls},
+		 *         {@link DatabaseMetaData#columnNullable} or
+		 *         {@link DatabaseMetaData#columnNullableUnknown}
+		 */
+		public int getNullable()
+		{
+			return nullable;
+		}
+	}
+
+	public static class IndexInfo
+	{
+		private final String name;
+
+		private final boolean unique;
+
+		private final List<String> columns = new ArrayList<>();
+
+		private final List<Boolean> descending = new ArrayList<>();
+
+		private IndexInfo(String name, boolean unique)
+		{
+			this.name = name;
+			this.unique = unique;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public boolean isUnique()
+		{
+			return unique;
+		}
+
+		public List<String> getColumns()
+		{
+			return Collections.unmodifiableList(columns);
+		}
+
+		public boolean isDescending(int columnIndex)
+		{
+			return descending.get(columnIndex);
+		}
+	}
+
+	public static class ForeignKeyInfo
+	{
+		private final String name;
+
+		private final String referencedTable;
+
+		private final List<String> columns = new ArrayList<>();
+
+		private final List<String> referencedColumns = new ArrayList<>();
+
+		private ForeignKeyInfo(String name, String referencedTable)
+		{
+			this.name = name;
+			this.referencedTable = referencedTable;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public String getReferencedTable()
+		{
+			return referencedTable;
+		}
+
+		/**
+		 * @return The columns of the foreign key in key sequence order
+		 */
+		public List<String> getColumns()
+		{
+			return Collections.unmodifiableList(columns);
+		}
+
+		/**
+		 * @return The referenced columns in the same order as
+		 *         {@link #getColumns()}
+		 */
+		public List<String> getReferencedColumns()
+		{
+			return Collections.unmodifiableList(referencedColumns);
+		}
+	}
+
+	private final Map<String, TableInfo> tables = new LinkedHashMap<>();
+
+	private final Map<String, TableInfo> tablesByUpperCaseName = new LinkedHashMap<>();
+
+	/**
+	 * The catalog and schema the snapshot was loaded from
+	 */
+	private String catalog;
+
+	private String schema;
+
+	private boolean foreignKeysLoaded;
+
+	private SchemaCatalog()
+	{
+	}
+
+	/**
+	 * Loads a snapshot of all tables in the given catalog and schema that are
+	 * not in a system schema of the database
+	 */
+	public static SchemaCatalog load(Connection connection, String catalog, String schema, DatabaseType databaseType)
+			throws SQLException
+	{
+		long startTime = System.currentTimeMillis();
+		SchemaCatalog res = new SchemaCatalog();
+		res.catalog = catalog;
+		res.schema = schema;
+		DatabaseMetaData metadata = connection.getMetaData();
+		res.loadTables(metadata, catalog, schema, databaseType);
+		res.loadColumns(metadata, catalog, schema);
+		res.loadPrimaryKeys(metadata, catalog, schema);
+		res.loadIndices(metadata, catalog, schema, databaseType);
+		log.fine("Loaded schema catalog with " + res.tables.size() + " tables in "
+				+ (System.currentTimeMillis() - startTime) + " ms");
+		return res;
+	}
+
+	/**
+	 * Loads the foreign keys of all tables of this snapshot. Foreign keys are
+	 * not loaded by {@link #load(Connection, String, String, DatabaseType)} as
+	 * most steps of the conversion do not need them. Calling this method more
+	 * than once has no effect.
+	 */
+	public synchronized void loadForeignKeys(Connection connection) throws SQLException
+	{
+		if (foreignKeysLoaded)
+			return;
+		long startTime = System.currentTimeMillis();
+		DatabaseMetaData metadata = connection.getMetaData();
+		boolean loaded = false;
+		try (ResultSet rs = metadata.getImportedKeys(catalog, schema, null))
+		{
+			loaded = readForeignKeys(rs, null);
+		}
+		catch (SQLException e)
+		{
+			log.fine("Loading foreign keys of all tables at once failed: " + e.getMessage());
+		}
+		if (!loaded)
+		{
+			for (TableInfo table : tables.values())
+			{
+				try (ResultSet rs = metadata.getImportedKeys(catalog, table.schema, table.name))
+				{
+					readForeignKeys(rs, table);
+				}
+			}
+		}
+		foreignKeysLoaded = true;
+		log.fine("Loaded foreign keys in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * @return All tables in the order they were returned by the database
+	 */
+	public List<TableInfo> getTables()
+	{
+		return new ArrayList<>(tables.values());
+	}
+
+	/**
+	 * @return The table with the given name, or <code>null</code> if there is
+	 *         no such table
+	 */
+	public TableInfo getTable(String name)
+	{
+		return tables.get(name);
+	}
+
+	public boolean containsTable(String name)
+	{
+		return tables.containsKey(name);
+	}
+
+	public boolean containsTableIgnoreCase(String name)
+	{
+		return tablesByUpperCaseName.containsKey(name.toUpperCase());
+	}
+
+	/**
+	 * @return true if one of the tables has an index with the given name
+	 */
+	public boolean containsIndexIgnoreCase(String name)
+	{
+		for (TableInfo table : tables.values())
+		{
+			for (String index : table.indices.keySet())
+			{
+				if (index.equalsIgnoreCase(name))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private void loadTables(DatabaseMetaData metadata, String catalog, String schema, DatabaseType databaseType)
+			throws SQLException
+	{
+		try (ResultSet rs = metadata.getTables(catalog, schema, null, new String[] { "TABLE" }))
+		{
+			while (rs.next())
+			{
+				String tableSchema = rs.getString("TABLE_SCHEM");
+				String name = rs.getString("TABLE_NAME");
+				if (!databaseType.isSystemSchema(tableSchema) && !tables.containsKey(name))
+				{
+					TableInfo table = new TableInfo(rs.getString("TABLE_CAT"), tableSchema, name);
+					tables.put(name, table);
+					tablesByUpperCaseName.putIfAbsent(name.toUpperCase(), table);
+				}
+			}
+		}
+	}
+
+	private TableInfo findTable(String tableSchema, String name)
+	{
+		TableInfo table = tables.get(name);
+		if (table == null || !equals(table.schema, tableSchema))
+			return null;
+		return table;
+	}
+
+	private static boolean equals(String s1, String s2)
+	{
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+
+	private void loadColumns(DatabaseMetaData metadata, String catalog, String schema) throws SQLException
+	{
+		try (ResultSet rs = metadata.getColumns(catalog, schema, null, null))
+		{
+			while (rs.next())
+			{
+				TableInfo table = findTable(rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"));
+				if (table != null)
+				{
+					table.columns.add(new ColumnInfo(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"),
+							rs.getInt("COLUMN_SIZE"), rs.getInt("NULLABLE")));
+				}
+			}
+		}
+	}
+
+	private void loadPrimaryKeys(DatabaseMetaData metadata, String catalog, String schema) throws SQLException
+	{
+		boolean loaded = false;
+		try (ResultSet rs = metadata.getPrimaryKeys(catalog, schema, null))
+		{
+			loaded = readPrimaryKeys(rs, null);
+		}
+		catch (SQLException e)
+		{
+			log.fine("Loading primary keys of all tables at once failed: " + e.getMessage());
+		}
+		if (!loaded)
+		{
+			for (TableInfo table : tables.values())
+			{
+				try (ResultSet rs = metadata.getPrimaryKeys(catalog, table.schema, table.name))
+				{
+					readPrimaryKeys(rs, table);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads primary key columns from the given result set into the given
+	 * table, or into the table of each row if table is <code>null</code>
+	 *
+	 * @return true if at least one primary key column was found
+	 */
+	private boolean readPrimaryKeys(ResultSet rs, TableInfo table) throws SQLException
+	{
+		boolean found = false;
+		while (rs.next())
+		{
+			TableInfo current = table == null ? findTable(rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"))
+					: table;
+			if (current != null)
+			{
+				current.primaryKeyColumns.add(rs.getString("COLUMN_NAME"));
+				current.primaryKeyName = rs.getString("PK_NAME");
+				found = true;
+			}
+		}
+		return found;
+	}
+
+	private void loadIndices(DatabaseMetaData metadata, String catalog, String schema, DatabaseType databaseType)
+			throws SQLException
+	{
+		boolean loaded = false;
+		if (databaseType.supportsIndexInfoOfAllTables())
+		{
+			try (ResultSet rs = metadata.getIndexInfo(catalog, schema, null, false, true))
+			{
+				loaded = readIndices(rs, null);
+			}
+			// Some drivers throw a NullPointerException instead of an
+			// SQLException for a lookup without a table name
+			catch (SQLException | RuntimeException e)
+			{
+				log.fine("Loading indices of all tables at once failed: " + e.getMessage());
+			}
+		}
+		if (!loaded)
+		{
+			for (TableInfo table : tables.values())
+			{
+				try (ResultSet rs = metadata.getIndexInfo(catalog, table.schema, table.name, false, true))
+				{
+					readIndices(rs, table);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads foreign key columns from the given result set into the given
+	 * table, or into the table of each row if table is <code>null</code>
+	 *
+	 * @return true if at least one foreign key column was found
+	 */
+	private boolean readForeignKeys(ResultSet rs, TableInfo table) throws SQLException
+	{
+		boolean found = false;
+		while (rs.next())
+		{
+			TableInfo current = table == null
+					? findTable(rs.getString("FKTABLE_SCHEM"), rs.getString("FKTABLE_NAME"))
+					: table;
+			if (current != null)
+			{
+				String referencedTable = rs.getString("PKTABLE_NAME");
+				String name = rs.getString("FK_NAME");
+				String key = name == null ? referencedTable : name;
+				ForeignKeyInfo foreignKey = current.foreignKeys.get(key);
+				if (foreignKey == null)
+				{
+					foreignKey = new ForeignKeyInfo(name, referencedTable);
+					current.foreignKeys.put(key, foreignKey);
+				}
+				// The columns are returned in key sequence order
+				foreignKey.columns.add(rs.getString("FKCOLUMN_NAME"));
+				foreignKey.referencedColumns.add(rs.getString("PKCOLUMN_NAME"));
+				found = true;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Reads index columns from the given result set into the given table, or
+	 * into the table of each row if table is <code>null</code>
+	 *
+	 * @return true if at least one index column was found
+	 */
+	private boolean readIndices(ResultSet rs, TableInfo table) throws SQLException
+	{
+		boolean found = false;
+		while (rs.next())
+		{
+			String indexName = rs.getString("INDEX_NAME");
+			TableInfo current = table == null ? findTable(rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"))
+					: table;
+			if (current != null && indexName != null)
+			{
+				IndexInfo index = current.indices.get(indexName);
+				if (index == null)
+				{
+					index = new IndexInfo(indexName, !rs.getBoolean("NON_UNIQUE"));
+					current.indices.put(indexName, index);
+				}
+				index.columns.add(rs.getString("COLUMN_NAME"));
+				index.descending.add("D".equals(rs.getString("ASC_OR_DESC")));
+				current.numberOfIndexColumns++;
+				found = true;
+			}
+		}
+		return found;
+	}
+
+}
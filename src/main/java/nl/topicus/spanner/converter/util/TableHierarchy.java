@@ -0,0 +1,203 @@
+package nl.topicus.spanner.converter.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration;
+import nl.topicus.spanner.converter.cfg.ConverterConfiguration.DatabaseType;
+import nl.topicus.spanner.converter.util.SchemaCatalog.ForeignKeyInfo;
+import nl.topicus.spanner.converter.util.SchemaCatalog.TableInfo;
+
+/**
+ * The parent of each table that is interleaved in another table in a Cloud
+ * Spanner destination. Interleaved tables are declared with
+ * TableConverter.interleave.&lt;child&gt;=&lt;parent&gt; or inferred from
+ * foreign keys if TableConverter.inferInterleavedTables is true. A foreign key
+ * of a child table is used when its columns are the first columns of the
+ * primary key of the child table, and reference the complete primary key of
+ * the parent table with the same column names. Cloud Spanner requires this for
+ * all interleaved tables, so declared parents that do not meet it are
+ * ignored.
+ *
+ * The primary key of a child table is always longer than the primary key of
+ * its parent, so the hierarchy cannot contain cycles.
+ */
+public class TableHierarchy
+{
+	private static final Logger log = Logger.getLogger(TableHierarchy.class.getName());
+
+	/**
+	 * The name of the parent of each interleaved table, by the name of the
+	 * table
+	 */
+	private final Map<String, String> parents = new HashMap<>();
+
+	private TableHierarchy()
+	{
+	}
+
+	/**
+	 * Creates the hierarchy of the tables in the given snapshot of the source
+	 * database. Foreign keys can only be used if they have been loaded with
+	 * {@link SchemaCatalog#loadForeignKeys(java.sql.Connection)}. The
+	 * hierarchy is empty if the destination is not Cloud Spanner.
+	 */
+	public static TableHierarchy create(SchemaCatalog sourceCatalog, ConverterConfiguration config)
+	{
+		TableHierarchy res = new TableHierarchy();
+		if (config.getDestinationDatabaseType() != DatabaseType.CloudSpanner)
+			return res;
+		for (Entry<String, String> interleave : config.getInterleavedTables().entrySet())
+		{
+			TableInfo child = getTableIgnoreCase(sourceCatalog, interleave.getKey());
+			TableInfo parent = getTableIgnoreCase(sourceCatalog, interleave.getValue());
+			if (child == null || parent == null)
+				log.warning("Ignoring interleaved table " + interleave.getKey() + " in " + interleave.getValue()
+						+ ": table not found");
+			else if (!isKeyPrefix(parent.getPrimaryKeyColumns(), child.getPrimaryKeyColumns()))
+				log.warning("Ignoring interleaved table " + child.getName() + " in " + parent.getName()
+						+ ": the primary key of the parent is not a prefix of the primary key of the child");
+			else
+				res.parents.put(child.getName(), parent.getName());
+		}
+		if (config.isInferInterleavedTables())
+		{
+			for (TableInfo child : sourceCatalog.getTables())
+			{
+				if (!res.parents.containsKey(child.getName()))
+				{
+					TableInfo parent = inferParent(sourceCatalog, child);
+					if (parent != null)
+						res.parents.put(child.getName(), parent.getName());
+				}
+			}
+		}
+		for (Entry<String, String> interleave : res.parents.entrySet())
+			log.info("Table " + interleave.getKey() + " will be interleaved in " + interleave.getValue());
+		return res;
+	}
+
+	/**
+	 * @return The table referenced by the foreign key of the child that
+	 *         matches the longest part of the primary key of the child, or
+	 *         <code>null</code> if there is no such foreign key
+	 */
+	private static TableInfo inferParent(SchemaCatalog sourceCatalog, TableInfo child)
+	{
+		TableInfo res = null;
+		for (ForeignKeyInfo foreignKey : child.getForeignKeys())
+		{
+			TableInfo parent = sourceCatalog.getTable(foreignKey.getReferencedTable());
+			if (parent == null || parent == child)
+				continue;
+			List<String> parentKey = parent.getPrimaryKeyColumns();
+			List<String> childKey = child.getPrimaryKeyColumns();
+			if (isKeyPrefix(parentKey, childKey)
+					&& equalsIgnoreCase(foreignKey.getColumns(), childKey.subList(0, parentKey.size()))
+					&& equalsIgnoreCase(foreignKey.getReferencedColumns(), parentKey)
+					&& (res == null || parentKey.size() > res.getPrimaryKeyColumns().size()))
+			{
+				res = parent;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return true if the parent key is not empty and the child key starts
+	 *         with the columns of the parent key and has at least one more
+	 *         column
+	 */
+	private static boolean isKeyPrefix(List<String> parentKey, List<String> childKey)
+	{
+		return !parentKey.isEmpty() && parentKey.size() < childKey.size()
+				&& equalsIgnoreCase(parentKey, childKey.subList(0, parentKey.size()));
+	}
+
+	private static boolean equalsIgnoreCase(List<String> list1, List<String> list2)
+	{
+		if (list1.size() != list2.size())
+			return false;
+		for (int index = 0; index < list1.size(); index++)
+		{
+			if (!list1.get(index).equalsIgnoreCase(list2.get(index)))
+				return false;
+		}
+		return true;
+	}
+
+	private static TableInfo getTableIgnoreCase(SchemaCatalog catalog, String name)
+	{
+		for (TableInfo table : catalog.getTables())
+		{
+			if (table.getName().equalsIgnoreCase(name))
+				return table;
+		}
+		return null;
+	}
+
+	/**
+	 * @return The parent of the given table, or <code>null</code> if the table
+	 *         is not interleaved
+	 */
+	public String getParent(String table)
+	{
+		return parents.get(table);
+	}
+
+	/**
+	 * @return The number of ancestors of the given table
+	 */
+	public int getDepth(String table)
+	{
+		int depth = 0;
+		String parent = parents.get(table);
+		while (parent != null)
+		{
+			depth++;
+			parent = parents.get(parent);
+		}
+		return depth;
+	}
+
+	public boolean isEmpty()
+	{
+		return parents.isEmpty();
+	}
+
+	/**
+	 * @return The given items ordered so that each parent table comes before
+	 *         its children. Items at the same depth keep their order.
+	 */
+	public <T> List<T> sortParentsFirst(List<T> items, Function<T, String> tableName)
+	{
+		List<T> res = new ArrayList<>(items);
+		res.sort(Comparator.comparingInt(item -> getDepth(tableName.apply(item))));
+		return res;
+	}
+
+	/**
+	 * @return The given items grouped by the depth of their table, starting
+	 *         with the tables that are not interleaved
+	 */
+	public <T> List<List<T>> groupByDepth(List<T> items, Function<T, String> tableName)
+	{
+		List<List<T>> res = new ArrayList<>();
+		for (T item : items)
+		{
+			int depth = getDepth(tableName.apply(item));
+			while (res.size() <= depth)
+				res.add(new ArrayList<>());
+			res.get(depth).add(item);
+		}
+		res.removeIf(List::isEmpty);
+		return res;
+	}
+
+}